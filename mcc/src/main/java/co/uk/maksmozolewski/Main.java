@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import co.uk.maksmozolewski.ast.ASTDotPrinter;
 import co.uk.maksmozolewski.ast.BaseType;
@@ -22,6 +23,8 @@ import co.uk.maksmozolewski.ast.Program;
 import co.uk.maksmozolewski.ast.Stmt;
 import co.uk.maksmozolewski.ast.VarDecl;
 import co.uk.maksmozolewski.gen.CodeGenerator;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
+import co.uk.maksmozolewski.lexer.PipelinedTokenCursor;
 import co.uk.maksmozolewski.lexer.Scanner;
 import co.uk.maksmozolewski.lexer.Token;
 import co.uk.maksmozolewski.lexer.Tokeniser;
@@ -84,14 +87,31 @@ public class Main {
     ));
 
     private static void usage() {
-        System.out.println("Usage: java " + Main.class.getSimpleName() + " inputfile outputfile");
+        System.out.println("Usage: java " + Main.class.getSimpleName() + " [-colour] [-pipelined | -parallel] inputfile outputfile");
+        System.out.println("       java " + Main.class.getSimpleName() + " -parser inputfile");
         System.exit(-1);
     }
 
     public static void main(String[] args) throws IOException {
 
-        if (args.length != 2 )
+        if (args.length == 2 && args[0].equals("-parser")) {
+            parseDeclarations(new File(args[1]));
+            return;
+        }
+
+        // allocate registers by graph colouring rather than linear scan
+        boolean colour = args.length > 0 && args[0].equals("-colour");
+        if (colour)
+            args = Arrays.copyOfRange(args, 1, args.length);
+
+        // tokenise on a separate thread while parsing
+        boolean pipelined = args.length == 3 && args[0].equals("-pipelined");
+        // tokenise first, then parse function bodies in parallel
+        boolean parallel = args.length == 3 && args[0].equals("-parallel");
+        if (args.length != 2 && !pipelined && !parallel)
             usage();
+        if (pipelined || parallel)
+            args = Arrays.copyOfRange(args, 1, args.length);
 
         File inputFile = new File(args[0]);
         File outputFile = new File(args[1]);
@@ -106,7 +126,13 @@ public class Main {
         }
         System.out.println("Compiling...");
         Tokeniser tokeniser = new Tokeniser(scanner);
-        Parser parser = new Parser(tokeniser);
+        Parser parser;
+        if (pipelined)
+            parser = new Parser(new PipelinedTokenCursor(tokeniser), inputFile);
+        else if (parallel)
+            parser = new Parser(tokeniser.tokenise(), inputFile, ForkJoinPool.commonPool());
+        else
+            parser = new Parser(tokeniser);
         Program program = parser.parse();
 
         // write tree to outfile.astdot
@@ -117,7 +143,8 @@ public class Main {
 
         // generate code if success
         if(semErrCount == 0){
-            CodeGenerator codeGen = new CodeGenerator(outputFile);
+            CodeGenerator codeGen = new CodeGenerator(outputFile,
+                colour ? RegisterAllocator.Strategy.GRAPH_COLOURING : RegisterAllocator.Strategy.LINEAR_SCAN);
             codeGen.emitProgram(program);
         }
 
@@ -153,4 +180,28 @@ public class Main {
         System.out.println("Drawing AST tree");
 
      }
+
+    /**
+     * Mode.PARSER, only parses the file's declarations. The function bodies are skipped over and never parsed,
+     * so it takes time in proportion to the number of declarations and only finds errors outside the bodies.
+     */
+    private static void parseDeclarations(File inputFile) throws IOException {
+        Scanner scanner;
+        try {
+            scanner = new Scanner(inputFile);
+        } catch (FileNotFoundException e) {
+            System.err.println("File "+inputFile.toString()+" does not exist.");
+            System.exit(FILE_NOT_FOUND);
+            return;
+        }
+        Tokeniser tokeniser = new Tokeniser(scanner);
+        Parser parser = new Parser(tokeniser.tokenise(), inputFile);
+        Program program = parser.parseLazily();
+
+        System.out.println("Parsed " + program.structTypeDecls.size() + " struct, " + program.varDecls.size() + " variable and "
+            + program.funDecls.size() + " function declarations.");
+        int errors = tokeniser.getErrorCount() + parser.getErrorCount();
+        System.out.println("Done with: " + errors + " errors.");
+        System.exit(errors == 0 ? PASS : PARSER_FAIL);
+    }
 }
\ No newline at end of file
@@ -4,12 +4,24 @@ import co.uk.maksmozolewski.ast.Type;
 
 public class ArrayType implements Type{
 
-    public Type innerType;
-    public int size;
+    public final Type innerType;
+    public final int size;
 
+    /** worked out once, the type can't change */
+    private final int hash;
+
+    /** the size in bytes, worked out the first time it's asked for as a struct's layout is only known once it's parsed */
+    private int sizeInBytes = -1;
+
+    /**
+     * Use Types.array() for the interned instance
+     * @param innerType
+     * @param size
+     */
     public ArrayType(Type innerType,int size){
         this.innerType = innerType;
         this.size = size;
+        this.hash = (innerType.hashCode() * 31 + size) * 31 + 2;
     }
 
     @Override
@@ -40,18 +52,23 @@ public class ArrayType implements Type{
             return false;
         }
         ArrayType arrayType = (ArrayType) o;
-        return arrayType.innerType.equals(innerType) && arrayType.size == size;
+        return arrayType.hash == hash && arrayType.size == size && arrayType.innerType.equals(innerType);
     }
 
     @Override
     public int hashCode() {
-        return innerType.hashCode() + (size * Integer.MAX_VALUE);
+        return hash;
     }
 
     @Override
     public int sizeOfType() {
-        int compactSize = this.innerType.sizeOfType() * size;
-        return compactSize + (4 - (compactSize % 4));
+        int sizeInBytes = this.sizeInBytes;
+        if(sizeInBytes < 0){
+            // elements are packed, the memory holding the array rounds it up to what it needs
+            // the size never changes once known, so working it out twice on a race is harmless
+            this.sizeInBytes = sizeInBytes = innerType.sizeOfType() * size;
+        }
+        return sizeInBytes;
     }
 
     
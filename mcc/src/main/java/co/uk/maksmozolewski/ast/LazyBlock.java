@@ -0,0 +1,97 @@
+package co.uk.maksmozolewski.ast;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A block which isn't parsed until its declarations or statements are first looked at.
+ * Both lists are views onto the block parsed on demand, and can be changed just like a normal block's.
+ */
+public class LazyBlock extends Block {
+
+    /** parses the block once and hands out the result after that */
+    private static class Body {
+        private Supplier<Block> parse;
+        private Block block;
+
+        Body(Supplier<Block> parse){
+            this.parse = parse;
+        }
+
+        synchronized Block get(){
+            if(block == null){
+                block = parse.get();
+                parse = null;
+            }
+            return block;
+        }
+
+        synchronized boolean isParsed(){
+            return block != null;
+        }
+    }
+
+    private static class BodyList<T> extends AbstractList<T> {
+        private final Body body;
+        private final boolean varDecls;
+
+        BodyList(Body body, boolean varDecls){
+            this.body = body;
+            this.varDecls = varDecls;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> delegate(){
+            Block block = body.get();
+            return (List<T>)(varDecls ? block.varDecls : block.stmnts);
+        }
+
+        @Override
+        public T get(int index) {
+            return delegate().get(index);
+        }
+
+        @Override
+        public int size() {
+            return delegate().size();
+        }
+
+        @Override
+        public T set(int index, T element) {
+            return delegate().set(index, element);
+        }
+
+        @Override
+        public void add(int index, T element) {
+            delegate().add(index, element);
+        }
+
+        @Override
+        public T remove(int index) {
+            return delegate().remove(index);
+        }
+    }
+
+    private final Body body;
+
+    /**
+     * @param parse parses the block, called at most once
+     */
+    public LazyBlock(Supplier<Block> parse){
+        this(new Body(parse));
+    }
+
+    private LazyBlock(Body body){
+        super(new BodyList<VarDecl>(body, true), new BodyList<Stmt>(body, false));
+        this.body = body;
+    }
+
+    /**
+     * Returns true if the block has been parsed already
+     * @return
+     */
+    public boolean isParsed(){
+        return body.isParsed();
+    }
+}
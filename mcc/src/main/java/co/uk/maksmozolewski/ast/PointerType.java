@@ -2,10 +2,18 @@ package co.uk.maksmozolewski.ast;
 
 public class PointerType implements Type{
 
-    public Type pointedToType;
-    
+    public final Type pointedToType;
+
+    /** worked out once, the type can't change */
+    private final int hash;
+
+    /**
+     * Use Types.pointer() for the interned instance
+     * @param pointedToType
+     */
     public PointerType(Type pointedToType){
         this.pointedToType = pointedToType;
+        this.hash = pointedToType.hashCode() * 31 + 1;
     }
 
     @Override
@@ -38,16 +46,17 @@ public class PointerType implements Type{
         }
         PointerType pointerType = (PointerType) o;
 
-        return pointerType.pointedToType.equals(pointedToType);
+        return pointerType.hash == hash && pointerType.pointedToType.equals(pointedToType);
     }
 
     @Override
     public int hashCode() {
-        return pointedToType.hashCode();
+        return hash;
     }
 
     @Override
     public int sizeOfType() {
+        // every pointer is a word, whatever it points to
         return 4;
     }
 
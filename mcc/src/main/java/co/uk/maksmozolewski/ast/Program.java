@@ -8,10 +8,14 @@ public class Program implements ASTNode {
     public final List<VarDecl> varDecls;
     public final List<FunDecl> funDecls;
 
-    public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls) {
+    /** the types the program was parsed with, any made for it later come from here too */
+    public final Types types;
+
+    public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls, Types types) {
         this.structTypeDecls = structTypeDecls;
 	    this.varDecls = varDecls;
 	    this.funDecls = funDecls;
+	    this.types = types;
     }
 
     public <T> T accept(ASTVisitor<T> v) {
@@ -0,0 +1,78 @@
+package co.uk.maksmozolewski.ast;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where each field of a struct lives, worked out once per declaration.
+ * Fields go in declaration order, each at the next offset its alignment allows, so chars pack down to single bytes.
+ * The struct is aligned like its most aligned field and its size is rounded up to that alignment,
+ * so arrays of it keep every field aligned.
+ */
+public final class StructLayout {
+
+    /** byte offsets of the fields from the start of the struct */
+    private final Map<String,Integer> offsets = new HashMap<String,Integer>();
+    private final Map<String,VarDecl> fields = new HashMap<String,VarDecl>();
+
+    /** size in bytes, including the padding at the end */
+    public final int size;
+    public final int alignment;
+
+    StructLayout(StructTypeDecl decl){
+        int offset = 0;
+        int alignment = 1;
+        for (VarDecl field : decl.varDecls) {
+            int fieldAlignment = alignmentOf(field.varType);
+            offset = alignUp(offset, fieldAlignment);
+            offsets.put(field.varName, offset);
+            fields.put(field.varName, field);
+
+            offset += field.varType.sizeOfType();
+            alignment = Math.max(alignment, fieldAlignment);
+        }
+        this.alignment = alignment;
+        this.size = alignUp(offset, alignment);
+    }
+
+    /**
+     * Returns the byte offset of the field from the start of the struct, or -1 if there's no such field
+     * @param fieldName
+     * @return
+     */
+    public int getOffset(String fieldName){
+        Integer offset = offsets.get(fieldName);
+        return offset == null ? -1 : offset;
+    }
+
+    /**
+     * Returns the declaration of the field, or null if there's no such field
+     * @param fieldName
+     * @return
+     */
+    public VarDecl getField(String fieldName){
+        return fields.get(fieldName);
+    }
+
+    /**
+     * Returns the alignment in bytes values of the type need in memory
+     * @param type
+     * @return
+     */
+    public static int alignmentOf(Type type){
+        if(type == BaseType.CHAR){
+            return 1;
+        } else if (type.isArrayType()){
+            return alignmentOf(((ArrayType)type).innerType);
+        } else if (type.isStructTypeType()){
+            return ((StructType)type).dec.getLayout().alignment;
+        } else {
+            // ints, pointers and void are all a word
+            return 4;
+        }
+    }
+
+    private static int alignUp(int offset, int alignment){
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+}
@@ -2,9 +2,13 @@ package co.uk.maksmozolewski.ast;
 
 public class StructType implements Type{
 
-    public String structTypeIdentifier;
-    public StructTypeDecl dec; // to be filled in by the name analyser
+    public final String structTypeIdentifier;
+    public StructTypeDecl dec; // filled in by the declaration when it's parsed
 
+    /**
+     * Use Types.struct() for the interned instance
+     * @param structType
+     */
     public StructType(String structType){
         this.structTypeIdentifier = structType;
     }
@@ -42,17 +46,13 @@ public class StructType implements Type{
 
     @Override
     public int hashCode() {
-        return structTypeIdentifier.hashCode() + (dec.hashCode() * Integer.MAX_VALUE);
+        // equality only goes by the identifier, and dec isn't there until the declaration is parsed
+        return structTypeIdentifier.hashCode();
     }
 
     @Override
     public int sizeOfType() {
-        // we treat each field as a word size apart from arrays, which we pad (but ArrayType.sizeof() will give you the padded size anyway)
-        int size = 0;
-        for (VarDecl var : dec.varDecls) {
-            size += var.varType.sizeOfType();
-        }
-        return size;
+        return dec.getLayout().size;
     }
 
     
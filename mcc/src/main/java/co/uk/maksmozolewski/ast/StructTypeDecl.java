@@ -4,14 +4,19 @@ import java.util.List;
 
 public class StructTypeDecl implements ASTNode {
 
-    /** the name of the type of struct declared */
-    public StructType structType;
+    /** the type of struct declared */
+    public final StructType structType;
 
     /** the variables declared within the struct  */
     public List<VarDecl> varDecls;
 
+    /** worked out the first time it's needed, after name analysis */
+    private StructLayout layout;
+
     public StructTypeDecl(StructType structType, List<VarDecl> varDecls){
         this.structType = structType;
+        // every use of the name in the compilation is the same interned instance, so they all know their declaration now
+        structType.dec = this;
         this.varDecls = varDecls;
     }
 
@@ -19,4 +24,17 @@ public class StructTypeDecl implements ASTNode {
         return v.visitStructTypeDecl(this);
     }
 
+    /**
+     * Returns the layout of the struct's fields in memory, the structs of the field types must have been declared
+     * @return
+     */
+    public StructLayout getLayout(){
+        StructLayout layout = this.layout;
+        if(layout == null){
+            // the layout never changes once made, so working it out twice on a race is harmless
+            this.layout = layout = new StructLayout(this);
+        }
+        return layout;
+    }
+
 }
@@ -0,0 +1,66 @@
+package co.uk.maksmozolewski.ast;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interning table for the types of one compilation, structurally equal types made through here are the same instance
+ * so comparing them is a reference comparison. Every parser of the compilation, including the ones parsing its
+ * headers and function bodies, shares the table, and the program hands it on to the later passes.
+ * Nothing is kept once the compilation is done with, and each compilation has struct types of its own, which know
+ * their declaration from the moment it's parsed.
+ * The factories take types which are already interned, anything made with the constructors goes through intern().
+ */
+public final class Types {
+
+    private final ConcurrentHashMap<Type,PointerType> pointers = new ConcurrentHashMap<Type,PointerType>();
+    private final ConcurrentHashMap<Type,ConcurrentHashMap<Integer,ArrayType>> arrays = new ConcurrentHashMap<Type,ConcurrentHashMap<Integer,ArrayType>>();
+    private final ConcurrentHashMap<String,StructType> structs = new ConcurrentHashMap<String,StructType>();
+
+    /**
+     * Returns the pointer type to the given interned type
+     * @param pointedToType
+     * @return
+     */
+    public PointerType pointer(Type pointedToType){
+        return pointers.computeIfAbsent(pointedToType, PointerType::new);
+    }
+
+    /**
+     * Returns the array type of the given interned type and size
+     * @param innerType
+     * @param size
+     * @return
+     */
+    public ArrayType array(Type innerType, int size){
+        return arrays.computeIfAbsent(innerType, t -> new ConcurrentHashMap<Integer,ArrayType>())
+            .computeIfAbsent(size, s -> new ArrayType(innerType, s));
+    }
+
+    /**
+     * Returns the struct type of the given name, its declaration fills in dec once parsed
+     * @param structTypeIdentifier
+     * @return
+     */
+    public StructType struct(String structTypeIdentifier){
+        return structs.computeIfAbsent(structTypeIdentifier, StructType::new);
+    }
+
+    /**
+     * Returns the interned instance structurally equal to the given type
+     * @param type
+     * @return
+     */
+    public Type intern(Type type){
+        if(type instanceof PointerType){
+            return pointer(intern(((PointerType)type).pointedToType));
+        } else if (type instanceof ArrayType){
+            ArrayType arrayType = (ArrayType)type;
+            return array(intern(arrayType.innerType), arrayType.size);
+        } else if (type instanceof StructType){
+            return struct(((StructType)type).structTypeIdentifier);
+        } else {
+            // base types are enum constants already
+            return type;
+        }
+    }
+}
@@ -29,18 +29,6 @@ public abstract class BaseMemory implements Memory {
         private static final long serialVersionUID = 1L;
     }
 
-    /** gives unique name */
-    protected String storeOrGetStrLitIdentifier(StrLiteral lit){
-        if(labelsStrLiterals.containsKey(lit)){
-            return labelsStrLiterals.get(lit);
-        } else {
-            String label = "$_str_lit_" + count++;
-            labelsStrLiterals.put(lit, label);
-            return label;
-
-        }
-    }
-
     /** gives unique var label */
     protected String storeOrGetVarLabel(VarDecl varDecl){
         if(labelsVars.containsKey(varDecl)){
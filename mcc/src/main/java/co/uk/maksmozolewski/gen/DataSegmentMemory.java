@@ -1,12 +1,15 @@
 package co.uk.maksmozolewski.gen;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import co.uk.maksmozolewski.ast.Expr;
-import co.uk.maksmozolewski.ast.FunDecl;
 import co.uk.maksmozolewski.ast.StrLiteral;
+import co.uk.maksmozolewski.ast.StructLayout;
 import co.uk.maksmozolewski.ast.VarDecl;
 import co.uk.maksmozolewski.ast.VarExpr;
 import co.uk.maksmozolewski.gen.MipsWriter.Directive;
@@ -16,6 +19,11 @@ public class DataSegmentMemory extends BaseMemory {
     MipsWriter writer;
     RegisterAllocator registerAllocator;
 
+    /** every string literal of the program, only written out in writeStrings() */
+    private final StringPool strings = new StringPool();
+    /** declared globals, in declaration order */
+    private final List<VarDecl> globals = new ArrayList<VarDecl>();
+
 
     public DataSegmentMemory(MipsWriter w, RegisterAllocator r) {
         writer = w;
@@ -23,49 +31,29 @@ public class DataSegmentMemory extends BaseMemory {
 
     }
 
+    /** literals with the same contents share one label, the data is only written in writeStrings() */
     @Override
     public void putStringConstant(StrLiteral var) {
-        String label = storeOrGetStrLitIdentifier(var);
-
-        writer.writeLabel(WriteTarget.DATA, label);
-        writer.writeDirective(WriteTarget.DATA, Directive.ASCIIZ);
-        writer.writeQuotedString(WriteTarget.DATA, var.val);
-
+        labelsStrLiterals.put(var, strings.add(var.val));
     }
 
-    @Override
-    public Register retrieveStringConstant(StrLiteral var) {
-        String label = storeOrGetStrLitIdentifier(var);
-
-        Register address = registerAllocator.getRegister();
-        writer.writeLa(address, label, "load str literal location: " + label);
-        return address;
+    /** returns the label of a string literal put before */
+    public String getStringLabel(StrLiteral var) {
+        if (!labelsStrLiterals.containsKey(var))
+            throw new MemoryNotDeclaredError();
+        return labelsStrLiterals.get(var);
     }
 
-    @Override
-    public void putVariable(StorageDirectory d, VarDecl var, Register value, Register wordOffset) {
-        if (d == StorageDirectory.STACK)
-            throw new InvalidMemoryDeclarationError();
+    /** returns the label of a declared global */
+    public String getVariableLabel(VarDecl var) {
         if (!labelsVars.containsKey(var))
             throw new MemoryNotDeclaredError();
-
-        String label = labelsVars.get(var);
-
-        // calculate wordOffset address
-        Register addressOfVar = registerAllocator.getRegister();
-        writer.writeLa(addressOfVar, label, "load variable address: " + label);
-
-        if (wordOffset != null) {
-            writer.writeSra(wordOffset, wordOffset, 2, "multiply offset by 4");
-            writer.writeAdd(addressOfVar, addressOfVar, wordOffset, "add offset to calculate word aligned address");
-        }
-
-        writer.writeSw(value, addressOfVar, 0, "store value in variable at offset");
-        registerAllocator.freeRegister(addressOfVar);
+        return labelsVars.get(var);
     }
 
+    /** the globals are only given their space in writeGlobals(), sized from their types */
     @Override
-    public void declareVariable(StorageDirectory d, VarDecl var, int words) {
+    public void declareVariable(StorageDirectory d, VarDecl var) {
         if (d == StorageDirectory.STACK)
             throw new IllegalArgumentException();
 
@@ -73,42 +61,54 @@ public class DataSegmentMemory extends BaseMemory {
             throw new MemoryAlreadyDeclaredError();
 
         // generate unique label for every unique var decl
-        String label = storeOrGetVarLabel(var);
-
-        // write declaration
-        writer.writeLabel(WriteTarget.DATA, label);
-        writer.writeDirective(WriteTarget.DATA, Directive.WORD);
-        writer.writeInt(WriteTarget.DATA, words);
+        storeOrGetVarLabel(var);
+        globals.add(var);
     }
 
-    @Override
-    public int getStackWordSizeSoFar() {
-        // we don't use the stack here
-        return 0;
+    /**
+     * Writes the data of all the string literals put so far, each distinct string once
+     * and the ones which end a longer string as part of it.
+     */
+    public void writeStrings() {
+        strings.write(writer);
     }
 
-    @Override
-    public Register retrieveVariableAddress(VarDecl var, Register offset) {
-        if (!labelsVars.containsKey(var))
-            throw new MemoryNotDeclaredError();
-
-        writer.writeNewline(WriteTarget.TEXT);
-        
-        Register addressRegister = registerAllocator.getRegister();
-
-        String label = storeOrGetVarLabel(var);
+    /**
+     * Returns how many bytes of string data were saved by pooling the literals, once they're written
+     * @return
+     */
+    public int getStringBytesSaved() {
+        return strings.getBytesSaved();
+    }
 
-        writer.writeLa(addressRegister, label, " load variable address: " + label);
-        
-        if(offset != null){
-            writer.writeSra(offset, offset, 2, "multiply offset by 4 to get word offset");
-            writer.writeAdd(addressRegister, addressRegister, offset, "calculate offset address");
-            registerAllocator.freeRegister(offset);
+    /**
+     * Lays out all the declared globals after the initialised data, like a bss section since globals start zeroed.
+     * The smallest go first so the scalars used most sit together, each aligned as its type needs
+     * and given exactly as many bytes as its type takes.
+     */
+    public void writeGlobals() {
+        List<VarDecl> ordered = new ArrayList<VarDecl>(globals);
+        // stable, so globals of the same size stay in declaration order
+        ordered.sort(Comparator.comparingInt(var -> var.varType.sizeOfType()));
+
+        writer.writeCommentNl(WriteTarget.DATA, "GLOBALS");
+        for (VarDecl var : ordered) {
+            int alignment = StructLayout.alignmentOf(var.varType);
+            if (alignment > 1) {
+                writer.writeDirective(WriteTarget.DATA, Directive.ALIGN);
+                writer.writeInt(WriteTarget.DATA, Integer.numberOfTrailingZeros(alignment));
+            }
+            writer.writeLabel(WriteTarget.DATA, storeOrGetVarLabel(var));
+            writer.writeDirective(WriteTarget.DATA, Directive.SPACE);
+            writer.writeInt(WriteTarget.DATA, Math.max(var.varType.sizeOfType(), 1));
         }
+        globals.clear();
+    }
 
-        writer.writeNewline(WriteTarget.TEXT);
-
-        return addressRegister;
+    @Override
+    public int getStackWordSizeSoFar() {
+        // we don't use the stack here
+        return 0;
     }
 
     @Override
@@ -128,12 +128,6 @@ public class DataSegmentMemory extends BaseMemory {
         throw new MemoryNotDeclaredError();
     }
 
-    @Override
-    public Register retrieveFunctionArgumentAddress(FunDecl d, VarDecl arg) {
-        // stack doesnt exist here
-        throw new MemoryNotDeclaredError();
-    }
-
     @Override
     public boolean containsVariable(VarDecl var) {
         return labelsVars.containsKey(var);
@@ -0,0 +1,144 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import co.uk.maksmozolewski.ast.Block;
+import co.uk.maksmozolewski.ast.FunDecl;
+import co.uk.maksmozolewski.ast.If;
+import co.uk.maksmozolewski.ast.Stmt;
+import co.uk.maksmozolewski.ast.VarDecl;
+import co.uk.maksmozolewski.ast.While;
+
+/**
+ * Where every parameter and local variable of a function lives relative to its $fp, worked out once before its body is generated.
+ * The first four parameters come in $a0-$a3 when they fit in a word, the others sit above the frame pointer where the caller pushed them.
+ * Locals are below the words the function reserves for itself.
+ * Blocks which can't be live at the same time, like the two branches of an if, share the same words.
+ */
+public final class FrameLayout {
+
+    /** byte offsets from $fp, of the lowest word for variables spanning several */
+    private final Map<VarDecl,Integer> offsets = new HashMap<VarDecl,Integer>();
+    /** the parameters which aren't in the frame but come in an argument register */
+    private final Map<VarDecl,Register> paramRegisters = new HashMap<VarDecl,Register>();
+
+    /** words below the reserved ones the locals need, enough for the deepest nesting of blocks */
+    public final int localWords;
+    /** words just below the $fp kept for the dumped registers */
+    public final int reservedWords;
+    /** the size of the whole frame in words, what $sp moves by on entry */
+    public final int frameWords;
+
+    private int nextWord = 0;
+    private int maxWords = 0;
+
+    /**
+     * @param decl
+     * @param reservedWords words just below the $fp taken before the locals, i.e. the dumped registers
+     */
+    public FrameLayout(FunDecl decl, int reservedWords){
+        this.reservedWords = reservedWords;
+
+        // the caller pushes the arguments which don't go in registers in order, so the last one is right above the frame pointer
+        int pushed = 0;
+        for (int i = 0; i < decl.params.size(); i++) {
+            if(!passedInRegister(decl, i))
+                pushed++;
+        }
+        for (int i = 0; i < decl.params.size(); i++) {
+            VarDecl param = decl.params.get(i);
+            if(passedInRegister(decl, i)){
+                paramRegisters.put(param, Register.paramRegs[i]);
+            } else {
+                offsets.put(param, pushed-- * 4);
+            }
+        }
+
+        layOut(decl.block);
+        this.localWords = maxWords;
+        this.frameWords = reservedWords + localWords;
+    }
+
+    /**
+     * Returns true if the argument at the given position is passed in $a0-$a3 rather than on the stack,
+     * which the first four are unless they're arrays or structs
+     * @param decl
+     * @param index
+     * @return
+     */
+    public static boolean passedInRegister(FunDecl decl, int index){
+        if(index >= Register.paramRegs.length)
+            return false;
+        VarDecl param = decl.params.get(index);
+        return !param.varType.isArrayType() && !param.varType.isStructTypeType() && param.varType.sizeOfType() <= 4;
+    }
+
+    /**
+     * Returns the register the parameter is passed in, or null if it's on the stack or not a parameter
+     * @param var
+     * @return
+     */
+    public Register getParamRegister(VarDecl var){
+        return paramRegisters.get(var);
+    }
+
+    /** returns true if any parameter or local lives in the frame, so has to be addressed off $fp */
+    public boolean hasStackVariables(){
+        return !offsets.isEmpty();
+    }
+
+    /**
+     * Returns true if the variable is a parameter or local of this function which lives in the frame
+     * @param var
+     * @return
+     */
+    public boolean contains(VarDecl var){
+        return offsets.containsKey(var);
+    }
+
+    /**
+     * Returns the byte offset of the variable from $fp, throws if it's not part of this frame
+     * @param var
+     * @return
+     */
+    public int getOffset(VarDecl var){
+        Integer offset = offsets.get(var);
+        if(offset == null)
+            throw new IllegalArgumentException("Variable " + var.varName + " is not in this frame");
+        return offset;
+    }
+
+    /** words each variable takes in the frame, everything is word aligned on the stack */
+    static int wordsOf(VarDecl var){
+        return (var.varType.sizeOfType() + 3) / 4;
+    }
+
+    private void layOut(Stmt stmt){
+        if(stmt instanceof Block){
+            Block block = (Block)stmt;
+            int blockStart = nextWord;
+
+            for (VarDecl var : block.varDecls) {
+                int words = wordsOf(var);
+                // arrays and structs are indexed upwards, so variables spanning words are addressed by their lowest one
+                offsets.put(var, -(reservedWords + nextWord + words - 1) * 4);
+                nextWord += words;
+            }
+            maxWords = Math.max(maxWords, nextWord);
+
+            for (Stmt inner : block.stmnts) {
+                layOut(inner);
+            }
+            // the words are free again once the block is left
+            nextWord = blockStart;
+        } else if (stmt instanceof If){
+            layOut(((If)stmt).ifStmt);
+            if(((If)stmt).elseStmt != null)
+                layOut(((If)stmt).elseStmt);
+        } else if (stmt instanceof While){
+            layOut(((While)stmt).stmt);
+        }
+        // other statements don't declare anything
+    }
+}
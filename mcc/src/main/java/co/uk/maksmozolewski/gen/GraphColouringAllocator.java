@@ -0,0 +1,273 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * Gives the temps of a function physical registers by colouring their interference graph, Chaitin-Briggs style.
+ * Moves are coalesced first as long as that can't make the graph harder to colour,
+ * then nodes with fewer neighbours than registers are taken off one by one. When there are none, the node which is cheapest to spill
+ * for how much it constrains is taken off optimistically, with uses inside loops counting ten times as much per loop,
+ * and only spilled if there's no register left for it once its neighbours have theirs.
+ * Values live across a call can only be coloured with callee saved registers.
+ */
+class GraphColouringAllocator {
+
+    /** how much more a use one loop deeper costs to spill */
+    private static final int LOOP_WEIGHT = 10;
+
+    private final Liveness liveness;
+    private final int firstSpillWord;
+
+    /** neighbours of every node still in the graph, coalesced nodes are merged into the node they were coalesced with */
+    private final Map<Integer, Set<Integer>> adjacency = new HashMap<Integer, Set<Integer>>();
+    private final Map<Integer, Integer> alias = new HashMap<Integer, Integer>();
+    private final Set<Integer> crossesCall = new HashSet<Integer>();
+    private final Map<Integer, Double> spillCosts = new HashMap<Integer, Double>();
+    /** pairs of temps copied between and how often the copy runs, the most run first */
+    private final List<int[]> moves = new ArrayList<int[]>();
+
+    private final Map<Integer, Register> colours = new HashMap<Integer, Register>();
+    private final Set<Integer> spilled = new HashSet<Integer>();
+
+    /**
+     * @param liveness
+     * @param firstSpillWord words from $fp to the first word spilled values may use
+     */
+    GraphColouringAllocator(Liveness liveness, int firstSpillWord){
+        this.liveness = liveness;
+        this.firstSpillWord = firstSpillWord;
+    }
+
+    RegisterAllocation allocate(){
+        build();
+        coalesce();
+        select(simplify());
+
+        // coalesced temps count as one from here on, so the copies between them go from a register to itself
+        Map<Integer, Register> assigned = new HashMap<Integer, Register>();
+        Map<Integer, Integer> spillWords = new HashMap<Integer, Integer>();
+        for (int temp : alias.keySet()) {
+            int node = find(temp);
+            if(node != temp){
+                liveness.merge(node, temp);
+            } else if(spilled.contains(node)){
+                spillWords.put(node, firstSpillWord + spillWords.size());
+            } else {
+                assigned.put(node, colours.get(node));
+            }
+        }
+        return new RegisterAllocation(liveness, assigned, spillWords, spillWords.size());
+    }
+
+    /** returns the registers the node can be given */
+    private List<Register> allowed(int node){
+        List<Register> out = new ArrayList<Register>();
+        boolean calleeSavedOnly = crossesCall.contains(node);
+        // the caller saved registers go first, the callee saved ones cost a save and restore in the function
+        for (Register r : Register.tmpRegs) {
+            if(!Register.calleeSavedRegs.contains(r) && !calleeSavedOnly)
+                out.add(r);
+        }
+        out.addAll(Register.calleeSavedRegs);
+        return out;
+    }
+
+    private int colourCount(int node){
+        return crossesCall.contains(node) ? Register.calleeSavedRegs.size() : Register.tmpRegs.size();
+    }
+
+    private int find(int temp){
+        int node = temp;
+        while(alias.get(node).intValue() != node)
+            node = alias.get(node);
+        return node;
+    }
+
+    private void addNode(int temp){
+        if(!alias.containsKey(temp)){
+            alias.put(temp, temp);
+            adjacency.put(temp, new HashSet<Integer>());
+            spillCosts.put(temp, 0.0);
+        }
+    }
+
+    private void addEdge(int a, int b){
+        if(a != b){
+            adjacency.get(a).add(b);
+            adjacency.get(b).add(a);
+        }
+    }
+
+    /** works out which values interfere from the liveness of the function, how costly each is to spill, and where they're moved */
+    private void build(){
+        liveness.compute();
+        int[] depths = liveness.computeLoopDepths();
+
+        Map<Long, Double> moveWeights = new HashMap<Long, Double>();
+        for (int i = 0; i < liveness.instructions.size(); i++) {
+            double weight = Math.pow(LOOP_WEIGHT, depths[i]);
+
+            // temps kept in the register they're passed in aren't in the graph
+            List<Integer> occurring = new ArrayList<Integer>(liveness.getUses(i));
+            int def = liveness.getDef(i);
+            if(def != -1)
+                occurring.add(def);
+            occurring.removeIf(liveness::isFixed);
+            for (int temp : occurring) {
+                addNode(temp);
+                spillCosts.put(temp, spillCosts.get(temp) + weight);
+            }
+
+            BitSet live = (BitSet)liveness.getLiveOut(i).clone();
+            for (int temp : liveness.getFixed().keySet())
+                live.clear(temp);
+            for (int temp = live.nextSetBit(0); temp >= 0; temp = live.nextSetBit(temp + 1))
+                addNode(temp);
+
+            // the result of the call is only written once it's back
+            if(liveness.isCall(i)){
+                for (int temp = live.nextSetBit(0); temp >= 0; temp = live.nextSetBit(temp + 1)) {
+                    if(temp != def)
+                        crossesCall.add(temp);
+                }
+            }
+
+            if(def == -1 || liveness.isFixed(def))
+                continue;
+
+            if(liveness.isMove(i)){
+                // the two sides of a copy hold the same value, so they don't interfere through it
+                int source = liveness.getUses(i).get(0);
+                live.clear(source);
+                if(source != def){
+                    long key = ((long)Math.min(source, def) << 32) | Math.max(source, def);
+                    Double seen = moveWeights.get(key);
+                    moveWeights.put(key, (seen == null ? 0 : seen) + weight);
+                }
+            }
+            for (int temp = live.nextSetBit(0); temp >= 0; temp = live.nextSetBit(temp + 1))
+                addEdge(def, temp);
+        }
+
+        List<Map.Entry<Long, Double>> byWeight = new ArrayList<Map.Entry<Long, Double>>(moveWeights.entrySet());
+        byWeight.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<Long, Double> move : byWeight) {
+            moves.add(new int[]{(int)(move.getKey() >> 32), (int)(long)move.getKey()});
+        }
+    }
+
+    /**
+     * Merges the two sides of moves which don't interfere, as long as the merged node has fewer neighbours
+     * with as many neighbours as there are registers than there are registers, so it can still always be coloured.
+     */
+    private void coalesce(){
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            for (int[] move : moves) {
+                int a = find(move[0]);
+                int b = find(move[1]);
+                if(a == b || adjacency.get(a).contains(b))
+                    continue;
+
+                boolean mergedCrossesCall = crossesCall.contains(a) || crossesCall.contains(b);
+                int k = mergedCrossesCall ? Register.calleeSavedRegs.size() : Register.tmpRegs.size();
+
+                Set<Integer> neighbours = new HashSet<Integer>(adjacency.get(a));
+                neighbours.addAll(adjacency.get(b));
+                int significant = 0;
+                for (int n : neighbours) {
+                    if(adjacency.get(n).size() >= colourCount(n))
+                        significant++;
+                }
+                if(significant >= k)
+                    continue;
+
+                alias.put(b, a);
+                for (int n : adjacency.remove(b)) {
+                    adjacency.get(n).remove(b);
+                    addEdge(a, n);
+                }
+                if(mergedCrossesCall)
+                    crossesCall.add(a);
+                spillCosts.put(a, spillCosts.get(a) + spillCosts.get(b));
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Takes the nodes off the graph one by one, returns them in the order they should be coloured.
+     * A node with fewer neighbours left than registers can always be coloured once they are,
+     * when there are none the one spilling costs least for how many neighbours it has goes next, hoping it gets a register anyway.
+     */
+    private Stack<Integer> simplify(){
+        Set<Integer> remaining = new LinkedHashSet<Integer>(adjacency.keySet());
+        Map<Integer, Integer> degrees = new HashMap<Integer, Integer>();
+        for (int node : remaining)
+            degrees.put(node, adjacency.get(node).size());
+
+        Stack<Integer> order = new Stack<Integer>();
+        while(!remaining.isEmpty()){
+            Integer next = null;
+            for (int node : remaining) {
+                if(degrees.get(node) < colourCount(node)){
+                    next = node;
+                    break;
+                }
+            }
+
+            if(next == null){
+                double cheapest = Double.MAX_VALUE;
+                for (int node : remaining) {
+                    double cost = spillCosts.get(node) / degrees.get(node);
+                    if(cost < cheapest){
+                        cheapest = cost;
+                        next = node;
+                    }
+                }
+            }
+
+            remaining.remove(next);
+            for (int n : adjacency.get(next)) {
+                if(remaining.contains(n))
+                    degrees.put(n, degrees.get(n) - 1);
+            }
+            order.push(next);
+        }
+        return order;
+    }
+
+    /** colours the nodes in the reverse of the order they were taken off, spilling those left without a register */
+    private void select(Stack<Integer> order){
+        while(!order.isEmpty()){
+            int node = order.pop();
+            Set<Register> taken = new HashSet<Register>();
+            for (int n : adjacency.get(node)) {
+                if(colours.containsKey(n))
+                    taken.add(colours.get(n));
+            }
+
+            Register colour = null;
+            for (Register r : allowed(node)) {
+                if(!taken.contains(r)){
+                    colour = r;
+                    break;
+                }
+            }
+
+            if(colour == null)
+                spilled.add(node);
+            else
+                colours.put(node, colour);
+        }
+    }
+}
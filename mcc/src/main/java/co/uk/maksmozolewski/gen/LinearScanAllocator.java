@@ -0,0 +1,142 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import co.uk.maksmozolewski.gen.Liveness.LiveInterval;
+
+/**
+ * Gives the temps of a function physical registers by walking their live intervals in order of where they start.
+ * Copies between temps where the source dies and the destination is born merge the two first.
+ * Values which live across a call only get callee saved registers. When there aren't enough registers
+ * the interval which ends last is spilled to its own word of the frame and reloaded around every instruction using it.
+ */
+class LinearScanAllocator {
+
+    private final Liveness liveness;
+    private final int firstSpillWord;
+
+    private final Map<Integer, Register> assigned = new HashMap<Integer, Register>();
+    /** the word from $fp of every spilled temp */
+    private final Map<Integer, Integer> spillWords = new HashMap<Integer, Integer>();
+
+    /**
+     * @param liveness
+     * @param firstSpillWord words from $fp to the first word spilled values may use
+     */
+    LinearScanAllocator(Liveness liveness, int firstSpillWord){
+        this.liveness = liveness;
+        this.firstSpillWord = firstSpillWord;
+    }
+
+    RegisterAllocation allocate(){
+        coalesceMoves();
+        List<LiveInterval> intervals = liveness.computeIntervals();
+
+        LinkedList<Register> freeCallerSaved = new LinkedList<Register>();
+        LinkedList<Register> freeCalleeSaved = new LinkedList<Register>(Register.calleeSavedRegs);
+        for (Register r : Register.tmpRegs) {
+            if(!Register.calleeSavedRegs.contains(r))
+                freeCallerSaved.add(r);
+        }
+
+        // sorted by where they end
+        List<LiveInterval> active = new ArrayList<LiveInterval>();
+        for (LiveInterval current : intervals) {
+            // registers of values which died by the time this one is born are free again,
+            // a value can take the register of one read for the last time by the instruction defining it
+            while(!active.isEmpty() && active.get(0).end <= current.start){
+                free(assigned.get(active.remove(0).temp), freeCallerSaved, freeCalleeSaved);
+            }
+
+            Register reg = null;
+            if(!freeCalleeSaved.isEmpty() && (current.crossesCall || freeCallerSaved.isEmpty())){
+                reg = freeCalleeSaved.removeFirst();
+            } else if(!current.crossesCall && !freeCallerSaved.isEmpty()){
+                reg = freeCallerSaved.removeFirst();
+            }
+
+            if(reg == null){
+                reg = spillFurthest(current, active);
+                if(reg == null){
+                    spill(current);
+                    continue;
+                }
+            }
+
+            assigned.put(current.temp, reg);
+            addActive(active, current);
+        }
+
+        return new RegisterAllocation(liveness, assigned, spillWords, spillWords.size());
+    }
+
+    /** merges the two temps of every copy where the source dies and the destination is born, so they get the same register */
+    private void coalesceMoves(){
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            Map<Integer, LiveInterval> byTemp = new HashMap<Integer, LiveInterval>();
+            for (LiveInterval interval : liveness.computeIntervals())
+                byTemp.put(interval.temp, interval);
+
+            for (int i = 0; i < liveness.instructions.size(); i++) {
+                if(!liveness.isMove(i))
+                    continue;
+
+                int to = liveness.getDef(i);
+                int from = liveness.getUses(i).get(0);
+                if(to == from || byTemp.get(from).end != i || byTemp.get(to).start != i)
+                    continue;
+
+                liveness.merge(from, to);
+                changed = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes the register of the active interval ending last if it ends after the current one and its register can hold the current one,
+     * the active interval is spilled instead. Returns null if the current interval should be spilled.
+     */
+    private Register spillFurthest(LiveInterval current, List<LiveInterval> active){
+        for (int i = active.size() - 1; i >= 0; i--) {
+            LiveInterval candidate = active.get(i);
+            if(candidate.end <= current.end)
+                return null;
+
+            Register reg = assigned.get(candidate.temp);
+            if(current.crossesCall && !Register.calleeSavedRegs.contains(reg))
+                continue;
+
+            active.remove(i);
+            assigned.remove(candidate.temp);
+            spill(candidate);
+            return reg;
+        }
+        return null;
+    }
+
+    private void spill(LiveInterval interval){
+        spillWords.put(interval.temp, firstSpillWord + spillWords.size());
+    }
+
+    private static void free(Register reg, List<Register> freeCallerSaved, List<Register> freeCalleeSaved){
+        if(Register.calleeSavedRegs.contains(reg)){
+            freeCalleeSaved.add(0, reg);
+        } else {
+            freeCallerSaved.add(0, reg);
+        }
+    }
+
+    private static void addActive(List<LiveInterval> active, LiveInterval interval){
+        int i = 0;
+        while(i < active.size() && active.get(i).end <= interval.end)
+            i++;
+        active.add(i, interval);
+    }
+}
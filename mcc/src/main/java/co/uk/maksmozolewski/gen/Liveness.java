@@ -0,0 +1,354 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import co.uk.maksmozolewski.ir.BasicBlock;
+import co.uk.maksmozolewski.ir.Call;
+import co.uk.maksmozolewski.ir.Copy;
+import co.uk.maksmozolewski.ir.IRFunction;
+import co.uk.maksmozolewski.ir.Instruction;
+import co.uk.maksmozolewski.ir.Parameter;
+import co.uk.maksmozolewski.ir.Return;
+import co.uk.maksmozolewski.ir.Syscall;
+import co.uk.maksmozolewski.ir.Temp;
+
+/**
+ * Where the temps of a function in the IR hold values, worked out over its basic blocks so values used again by a loop
+ * stay live through all of it. The instructions are numbered in the order the blocks are laid out, which is what
+ * the live intervals go by. Temps can be merged, from then on they count as one everywhere.
+ */
+final class Liveness {
+
+    /** where a temp holds a value, from the first to the last instruction it's live at */
+    static final class LiveInterval {
+        /** the id of the temp, or of the one it's merged into */
+        final int temp;
+        int start;
+        int end;
+        /** true if the value has to survive a call, which may destroy every caller saved register */
+        boolean crossesCall = false;
+
+        LiveInterval(int temp, int at){
+            this.temp = temp;
+            this.start = at;
+            this.end = at;
+        }
+
+        void include(int at){
+            start = Math.min(start, at);
+            end = Math.max(end, at);
+        }
+    }
+
+    final IRFunction function;
+    /** every instruction of the function in the order it's written */
+    final List<Instruction> instructions = new ArrayList<Instruction>();
+    /** the number of the first instruction of each block, the blocks being in the order they're laid out */
+    private final int[] blockStarts;
+    /** the blocks control can go to from each one */
+    private final List<List<Integer>> successors = new ArrayList<List<Integer>>();
+    /** the temp each temp is merged into, itself if it isn't */
+    private final int[] merged;
+    /** temps which only ever live in the register they're passed in, see fixPassedRegisters() */
+    private final Map<Integer, Register> fixed = new HashMap<Integer, Register>();
+    /** copies, parameters and calls whose result nothing reads */
+    private final Set<Instruction> unusedResults = new HashSet<Instruction>();
+
+    /** the temps live right after each instruction, filled in by compute() */
+    private BitSet[] liveOut;
+
+    Liveness(IRFunction function){
+        this.function = function;
+        List<BasicBlock> blocks = function.getBlocks();
+        blockStarts = new int[blocks.size() + 1];
+        for (int b = 0; b < blocks.size(); b++) {
+            blockStarts[b] = instructions.size();
+            instructions.addAll(blocks.get(b).getInstructions());
+        }
+        blockStarts[blocks.size()] = instructions.size();
+        for (BasicBlock block : blocks) {
+            List<Integer> out = new ArrayList<Integer>();
+            for (BasicBlock successor : function.successors(block))
+                out.add(blocks.indexOf(successor));
+            successors.add(out);
+        }
+
+        merged = new int[function.getTempCount()];
+        for (int t = 0; t < merged.length; t++)
+            merged[t] = t;
+    }
+
+    /** returns the id the temp counts as, the frame is -1 */
+    int find(Temp t){
+        if(t.isFrame())
+            return -1;
+        int id = t.id;
+        while(merged[id] != id)
+            id = merged[id];
+        return id;
+    }
+
+    /** makes the second temp count as the first from now on */
+    void merge(int into, int from){
+        merged[from] = into;
+    }
+
+    /** returns the temp the instruction writes or -1 */
+    int getDef(int at){
+        Temp def = instructions.get(at).getDef();
+        return def == null ? -1 : find(def);
+    }
+
+    /** returns the temps the instruction reads, each once */
+    List<Integer> getUses(int at){
+        List<Integer> uses = new ArrayList<Integer>();
+        for (Temp t : instructions.get(at).getUses()) {
+            int id = find(t);
+            if(!uses.contains(id))
+                uses.add(id);
+        }
+        return uses;
+    }
+
+    /** returns true for a copy between two temps which are both given registers by the allocator */
+    boolean isMove(int at){
+        return instructions.get(at) instanceof Copy && getUses(at).size() == 1 && !isFixed(getDef(at)) && !isFixed(getUses(at).get(0));
+    }
+
+    /** returns true if the temp is kept in the register it's passed in rather than given one by the allocator */
+    boolean isFixed(int temp){
+        return fixed.containsKey(temp);
+    }
+
+    /** returns the register of every temp kept in the register it's passed in */
+    Map<Integer, Register> getFixed(){
+        return Collections.unmodifiableMap(fixed);
+    }
+
+    /** returns the copies, parameters and calls whose result nothing reads, fixPassedRegisters() has to have been called */
+    Set<Instruction> getUnusedResults(){
+        return Collections.unmodifiableSet(unusedResults);
+    }
+
+    boolean isCall(int at){
+        return instructions.get(at) instanceof Call;
+    }
+
+    /** returns true if the function calls other functions */
+    boolean makesCalls(){
+        for (Instruction i : instructions) {
+            if(i instanceof Call)
+                return true;
+        }
+        return false;
+    }
+
+    /** returns the id every temp of the function counts as, by the temp's own id */
+    int[] getMerged(){
+        int[] out = new int[merged.length];
+        for (int t = 0; t < merged.length; t++) {
+            int id = t;
+            while(merged[id] != id)
+                id = merged[id];
+            out[t] = id;
+        }
+        return out;
+    }
+
+    /**
+     * Works out which temps are live after every instruction, first for whole blocks until nothing changes
+     * and then through each block from its end.
+     */
+    void compute(){
+        List<BasicBlock> blocks = function.getBlocks();
+        BitSet[] used = new BitSet[blocks.size()];
+        BitSet[] defined = new BitSet[blocks.size()];
+        BitSet[] blockIn = new BitSet[blocks.size()];
+        BitSet[] blockOut = new BitSet[blocks.size()];
+        for (int b = 0; b < blocks.size(); b++) {
+            used[b] = new BitSet();
+            defined[b] = new BitSet();
+            blockIn[b] = new BitSet();
+            blockOut[b] = new BitSet();
+            for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+                for (int use : getUses(i)) {
+                    if(!defined[b].get(use))
+                        used[b].set(use);
+                }
+                if(getDef(i) != -1)
+                    defined[b].set(getDef(i));
+            }
+        }
+
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            for (int b = blocks.size() - 1; b >= 0; b--) {
+                BitSet out = new BitSet();
+                for (int successor : successors.get(b))
+                    out.or(blockIn[successor]);
+
+                BitSet in = (BitSet)out.clone();
+                in.andNot(defined[b]);
+                in.or(used[b]);
+
+                if(!out.equals(blockOut[b]) || !in.equals(blockIn[b])){
+                    blockOut[b] = out;
+                    blockIn[b] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        liveOut = new BitSet[instructions.size()];
+        for (int b = 0; b < blocks.size(); b++) {
+            BitSet live = (BitSet)blockOut[b].clone();
+            for (int i = blockStarts[b + 1] - 1; i >= blockStarts[b]; i--) {
+                liveOut[i] = (BitSet)live.clone();
+                if(getDef(i) != -1)
+                    live.clear(getDef(i));
+                for (int use : getUses(i))
+                    live.set(use);
+            }
+        }
+    }
+
+    /**
+     * Keeps the values which are passed on in $a0-$a3 or $v0 right after they're worked out, or which are only read right after
+     * they were passed in one, in that register, so the moves in and out of it go.
+     * A value passed to a call has to be the last argument put in its register, as the ones before it are put in theirs
+     * first, and the call can't push any. A value taken from a register can't be read by a call, whose arguments may
+     * overwrite it before it's passed. Either way the value is written once and dies where it's read.
+     * Also finds the copies, parameters and calls whose result is never read, which needn't be written.
+     */
+    void fixPassedRegisters(){
+        compute();
+        int[] defs = new int[merged.length];
+        for (int i = 0; i < instructions.size(); i++) {
+            if(getDef(i) != -1)
+                defs[getDef(i)]++;
+        }
+
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            int def = getDef(i);
+            if(def == -1)
+                continue;
+            if(!liveOut[i].get(def) && (instruction instanceof Copy || instruction instanceof Parameter
+                || instruction instanceof Call || instruction instanceof Syscall)){
+                unusedResults.add(instruction);
+                continue;
+            }
+
+            // the next instruction runs right after this one only if it's in the same block
+            boolean endsBlock = Arrays.binarySearch(blockStarts, i + 1) >= 0;
+            if(defs[def] != 1 || endsBlock || liveOut[i + 1].get(def))
+                continue;
+            Instruction next = instructions.get(i + 1);
+
+            Register passedIn = passedIn(next, def);
+            if(passedIn == null && !(next instanceof Call) && !(next instanceof Syscall) && getUses(i + 1).contains(def)){
+                if(instruction instanceof Parameter)
+                    passedIn = Register.paramRegs[((Parameter)instruction).index];
+                else if(instruction instanceof Call || instruction instanceof Syscall)
+                    passedIn = Register.v0;
+            }
+            if(passedIn != null)
+                fixed.put(def, passedIn);
+        }
+    }
+
+    /** returns the register the instruction passes the temp on in if it's the first to be put in its register, otherwise null */
+    private Register passedIn(Instruction instruction, int temp){
+        List<Temp> args;
+        if(instruction instanceof Return){
+            Temp value = ((Return)instruction).value;
+            return value != null && find(value) == temp ? Register.v0 : null;
+        } else if(instruction instanceof Call && ((Call)instruction).stackArgs.isEmpty()){
+            args = ((Call)instruction).registerArgs;
+        } else if(instruction instanceof Syscall){
+            args = ((Syscall)instruction).args;
+        } else {
+            return null;
+        }
+
+        int last = args.size() - 1;
+        while(last >= 0 && args.get(last) == null)
+            last--;
+        if(last == -1 || find(args.get(last)) != temp)
+            return null;
+        for (int i = 0; i < last; i++) {
+            if(args.get(i) != null && find(args.get(i)) == temp)
+                return null;
+        }
+        return Register.paramRegs[last];
+    }
+
+    /** returns the temps live right after the instruction, compute() has to have been called */
+    BitSet getLiveOut(int at){
+        return liveOut[at];
+    }
+
+    /** returns the live interval of every temp in order of where they start, computing liveness first */
+    List<LiveInterval> computeIntervals(){
+        compute();
+
+        Map<Integer, LiveInterval> intervals = new TreeMap<Integer, LiveInterval>();
+        for (int i = 0; i < instructions.size(); i++) {
+            List<Integer> occurring = new ArrayList<Integer>(getUses(i));
+            int def = getDef(i);
+            if(def != -1)
+                occurring.add(def);
+            for (int id = liveOut[i].nextSetBit(0); id >= 0; id = liveOut[i].nextSetBit(id + 1))
+                occurring.add(id);
+
+            for (int id : occurring) {
+                if(isFixed(id))
+                    continue;
+                LiveInterval interval = intervals.get(id);
+                if(interval == null)
+                    intervals.put(id, new LiveInterval(id, i));
+                else
+                    interval.include(i);
+            }
+
+            // the result of the call is only written once it's back
+            if(isCall(i)){
+                for (int id = liveOut[i].nextSetBit(0); id >= 0; id = liveOut[i].nextSetBit(id + 1)) {
+                    if(id != def && !isFixed(id))
+                        intervals.get(id).crossesCall = true;
+                }
+            }
+        }
+
+        List<LiveInterval> out = new ArrayList<LiveInterval>(intervals.values());
+        out.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(a.temp, b.temp));
+        return out;
+    }
+
+    /**
+     * How many loops each instruction is in, found from the edges back to a block laid out earlier which every While ends with.
+     * Loops nest properly, so an instruction is inside as many loops as there are back edges around it.
+     */
+    int[] computeLoopDepths(){
+        int[] depths = new int[instructions.size()];
+        for (int b = 0; b < successors.size(); b++) {
+            for (int target : successors.get(b)) {
+                if(target > b)
+                    continue;
+                for (int i = blockStarts[target]; i < blockStarts[b + 1]; i++)
+                    depths[i]++;
+            }
+        }
+        return depths;
+    }
+}
@@ -22,6 +22,7 @@ public class MipsWriter {
     
     public enum Directive{
         ALIGN {public String toString(){return ".align";};},
+        ASCII{public String toString(){return ".ascii";};},
         ASCIIZ{public String toString(){return ".asciiz";};},
         BYTE{public String toString(){return ".byte";};},
         DATA{public String toString(){return ".data";};},
@@ -137,8 +138,24 @@ public class MipsWriter {
         
     }
     
+    /** writes the string between quotes, escaping the characters which can't appear as they are */
     public void writeQuotedString(WriteTarget t, String s){
-        writeToNoIdnt(t, '\"'+s+"\"");
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('\"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c){
+                case '\n': quoted.append("\\n"); break;
+                case '\t': quoted.append("\\t"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\b': quoted.append("\\b"); break;
+                case '\f': quoted.append("\\f"); break;
+                case '\0': quoted.append("\\0"); break;
+                case '\"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                default: quoted.append(c);
+            }
+        }
+        writeToNoIdnt(t, quoted.append('\"').toString());
         writeNewline(t);
 
     }
@@ -514,6 +531,13 @@ public class MipsWriter {
         writeNewline(WriteTarget.TEXT);
     }
 
+    /** multiply by an immediate, keeping the lower 32 bits */
+    public void writeMul(Register rd, Register rs, int imm, String comment){
+        writeTo(WriteTarget.TEXT, "mul " + rd + ',' + rs + ',' + imm);
+        writeComment(WriteTarget.TEXT,comment);
+        writeNewline(WriteTarget.TEXT);
+    }
+
     public void writeMove(Register rt, Register rs,String comment){
         writeTo(WriteTarget.TEXT, "move " + rt + ',' + rs);
         writeComment(WriteTarget.TEXT,comment);
@@ -24,11 +24,14 @@ public class Register {
             new Register(7,"a3")};
 
     public static final List<Register> tmpRegs = new ArrayList<Register>();
+    /** the temporaries a function has to give back as it found them, the rest are saved by the caller */
+    public static final List<Register> calleeSavedRegs = new ArrayList<Register>();
     static {
         for (int i=8; i<=15; i++)
             tmpRegs.add(new Register(i,"t"+(i-8)));
         for (int i=16; i<=19; i++) // leave s4 - s7 for temporary assignments which cannot destroy values
-            tmpRegs.add(new Register(i,"s"+(i-16)));
+            calleeSavedRegs.add(new Register(i,"s"+(i-16)));
+        tmpRegs.addAll(calleeSavedRegs);
         for (int i=24; i<=25; i++)
             tmpRegs.add(new Register(i,"t"+(i-24+8)));
     }
@@ -0,0 +1,93 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import co.uk.maksmozolewski.ir.Copy;
+import co.uk.maksmozolewski.ir.Instruction;
+import co.uk.maksmozolewski.ir.Temp;
+
+/** where each temp of a function is kept once they're given physical registers, with what the function's frame needs for it */
+public final class RegisterAllocation {
+    /** the register of every temp which isn't spilled, by its id */
+    private final Map<Integer, Register> registers = new HashMap<Integer, Register>();
+    /** the byte offset from $fp of every spilled temp, by its id */
+    private final Map<Integer, Integer> spillOffsets = new HashMap<Integer, Integer>();
+    private final Set<Instruction> unusedResults;
+
+    /** the callee saved registers the code uses, which the function has to save and restore */
+    final List<Register> calleeSavedUsed;
+    /** the words the frame needs below everything else for spilled values */
+    final int spillWords;
+    /** copies left out because both sides ended up in the same place */
+    final int coalescedMoves;
+    /** true if the code calls other functions, so overwrites $ra */
+    final boolean makesCalls;
+
+    /**
+     * @param liveness the function's liveness, with the temps merged the way the allocator left them
+     * @param assigned the register of every temp counted as itself which isn't spilled or kept where it's passed
+     * @param spilled the word from $fp of every temp counted as itself which is spilled
+     * @param spillWords how many words the spilled values take
+     */
+    RegisterAllocation(Liveness liveness, Map<Integer, Register> assigned, Map<Integer, Integer> spilled, int spillWords){
+        int[] merged = liveness.getMerged();
+        for (int t = 0; t < merged.length; t++) {
+            if(liveness.isFixed(merged[t]))
+                registers.put(t, liveness.getFixed().get(merged[t]));
+            else if(assigned.containsKey(merged[t]))
+                registers.put(t, assigned.get(merged[t]));
+            else if(spilled.containsKey(merged[t]))
+                spillOffsets.put(t, -spilled.get(merged[t]) * 4);
+        }
+
+        int coalesced = 0;
+        for (Instruction i : liveness.instructions) {
+            if(i instanceof Copy && isSameLocation(((Copy)i).dest, ((Copy)i).src))
+                coalesced++;
+        }
+
+        this.unusedResults = liveness.getUnusedResults();
+        this.calleeSavedUsed = calleeSavedIn(assigned.values());
+        this.spillWords = spillWords;
+        this.coalescedMoves = coalesced;
+        this.makesCalls = liveness.makesCalls();
+    }
+
+    /** returns the register the temp is in, or null if it's spilled */
+    public Register getRegister(Temp t){
+        return t.isFrame() ? Register.fp : registers.get(t.id);
+    }
+
+    /** returns the byte offset from $fp of the word the temp is spilled to, or null if it's in a register */
+    public Integer getSpillOffset(Temp t){
+        return t.isFrame() ? null : spillOffsets.get(t.id);
+    }
+
+    /** returns true if nothing reads what the copy, parameter or call writes, so it needn't be written */
+    public boolean isResultUnused(Instruction i){
+        return unusedResults.contains(i);
+    }
+
+    /** returns true if both temps are kept in the same register or the same word, so copying between them does nothing */
+    public boolean isSameLocation(Temp a, Temp b){
+        Register register = getRegister(a);
+        if(register != null)
+            return register == getRegister(b);
+        return getSpillOffset(a) != null && getSpillOffset(a).equals(getSpillOffset(b));
+    }
+
+    /** returns the callee saved registers among the ones given, in order */
+    static List<Register> calleeSavedIn(Collection<Register> registers){
+        List<Register> out = new ArrayList<Register>();
+        for (Register r : Register.calleeSavedRegs) {
+            if(registers.contains(r))
+                out.add(r);
+        }
+        return out;
+    }
+}
@@ -1,58 +1,38 @@
 package co.uk.maksmozolewski.gen;
 
-import java.util.EmptyStackException;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Stack;
+import co.uk.maksmozolewski.ir.IRFunction;
 
 public class RegisterAllocator {
     /*
-     * Simple register allocator.
+     * Gives the temps of each function in the IR physical registers by the chosen strategy,
+     * before any of its code is written.
      */
-    private MipsWriter writer;
-    public RegisterAllocator(MipsWriter wr){
-        freeRegs.addAll(Register.tmpRegs);
-        writer = wr;
-    }
-    
-    // contains all the free temporary registers
-    private Stack<Register> freeRegs = new Stack<Register>();
 
-    private class RegisterAllocationError extends Error {
-    }
-    
-    /** returns clean register */
-    public Register getRegister() {
-        try {
-            Register reg = freeRegs.pop();
-            writer.writeAddI(reg, Register.zero, 0, "clean register");
-            return reg;
-        } catch (EmptyStackException ese) {
-            throw new RegisterAllocationError(); // no more free registers, bad luck!
-        }
+    /** how temps are given physical registers */
+    public enum Strategy {
+        /** one pass over the live intervals, fast */
+        LINEAR_SCAN,
+        /** colours the interference graph, slower but spills less and removes more moves */
+        GRAPH_COLOURING
     }
 
-    public void freeRegister(Register reg) {
-        if(Register.tmpRegs.contains(reg)){
-            freeRegs.push(reg);
-        }
-    }
+    private final Strategy strategy;
 
-    public List<Register> getUsedRegisters(){
-        List<Register> out = new LinkedList<Register>();
-        for (Register r : Register.tmpRegs) {
-            if(freeRegs.contains(r)){
-                // if used 
-                out.add(r);
-            }
-        }
-
-        return out;
+    public RegisterAllocator(Strategy strategy){
+        this.strategy = strategy;
     }
 
-    public void resetRegisters(){
-        freeRegs = new Stack<Register>();
-        freeRegs.addAll(Register.tmpRegs);
+    /**
+     * Gives the temps of a function physical registers
+     * @param f the function's body in the IR
+     * @param firstSpillWord words from $fp to the first free word of the frame, where spilled values go
+     * @return
+     */
+    RegisterAllocation allocate(IRFunction f, int firstSpillWord) {
+        Liveness liveness = new Liveness(f);
+        liveness.fixPassedRegisters();
+        if(strategy == Strategy.GRAPH_COLOURING)
+            return new GraphColouringAllocator(liveness, firstSpillWord).allocate();
+        return new LinearScanAllocator(liveness, firstSpillWord).allocate();
     }
 }
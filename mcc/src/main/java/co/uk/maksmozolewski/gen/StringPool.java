@@ -0,0 +1,105 @@
+package co.uk.maksmozolewski.gen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.uk.maksmozolewski.gen.MipsWriter.Directive;
+import co.uk.maksmozolewski.gen.MipsWriter.WriteTarget;
+
+/**
+ * All the string literals of a program, stored once per distinct content.
+ * A string which is the tail of a longer one gets no storage of its own, its label points into the longer string,
+ * so "\n" shares the end of "error\n".
+ */
+public class StringPool {
+
+    /** label of every distinct string */
+    private final Map<String, String> labels = new HashMap<String, String>();
+    /** the distinct strings in the order they were first seen */
+    private final List<String> strings = new ArrayList<String>();
+
+    /** bytes every occurrence would have taken with its own copy, terminators included */
+    private int unpooledBytes = 0;
+    private int pooledBytes = -1;
+
+    /**
+     * Registers one occurrence of the string and returns the label its data will be under
+     * @param content the characters of the literal, escapes already undone
+     * @return
+     */
+    public String add(String content){
+        unpooledBytes += content.length() + 1;
+
+        String label = labels.get(content);
+        if(label == null){
+            label = "$_str_lit_" + labels.size();
+            labels.put(content, label);
+            strings.add(content);
+        }
+        return label;
+    }
+
+    /**
+     * Writes every pooled string to the data section. Strings which are a suffix of another
+     * are written as part of it, with their label in the middle of the longer one.
+     * @param writer
+     */
+    public void write(MipsWriter writer){
+        // sorted by their reversed contents, every string which ends with this one comes straight after it,
+        // so a string only has to be checked against the next and each run of suffixes ends with the string holding them all
+        List<String> byReversed = new ArrayList<String>(strings);
+        byReversed.sort((a, b) -> reverse(a).compareTo(reverse(b)));
+
+        writer.writeCommentNl(WriteTarget.DATA, "STRINGS");
+        pooledBytes = 0;
+        List<String> suffixes = new ArrayList<String>();
+        for (int i = 0; i < byReversed.size(); i++) {
+            String current = byReversed.get(i);
+            if(i + 1 < byReversed.size() && byReversed.get(i + 1).endsWith(current)){
+                suffixes.add(current);
+            } else {
+                writeHost(writer, current, suffixes);
+                pooledBytes += current.length() + 1;
+                suffixes.clear();
+            }
+        }
+
+        writer.writeCommentNl(WriteTarget.DATA,
+            "STRINGS: " + getBytesSaved() + " bytes saved by pooling " + unpooledBytes + " bytes of literals");
+    }
+
+    /**
+     * Returns how many bytes of the data section pooling saved, only known once the pool is written
+     * @return
+     */
+    public int getBytesSaved(){
+        if(pooledBytes < 0)
+            throw new IllegalStateException("the pool has not been written yet");
+        return unpooledBytes - pooledBytes;
+    }
+
+    /** writes the string in pieces split where its suffixes start, the suffixes come shortest first */
+    private void writeHost(MipsWriter writer, String host, List<String> suffixes){
+        int start = 0;
+        String label = labels.get(host);
+        for (int i = suffixes.size() - 1; i >= 0; i--) {
+            String suffix = suffixes.get(i);
+            // each suffix is longer than the one before it, so the pieces are never empty
+            int end = host.length() - suffix.length();
+            writer.writeLabel(WriteTarget.DATA, label);
+            writer.writeDirective(WriteTarget.DATA, Directive.ASCII);
+            writer.writeQuotedString(WriteTarget.DATA, host.substring(start, end));
+            label = labels.get(suffix);
+            start = end;
+        }
+        writer.writeLabel(WriteTarget.DATA, label);
+        writer.writeDirective(WriteTarget.DATA, Directive.ASCIIZ);
+        writer.writeQuotedString(WriteTarget.DATA, host.substring(start));
+    }
+
+    private static String reverse(String s){
+        return new StringBuilder(s).reverse().toString();
+    }
+}
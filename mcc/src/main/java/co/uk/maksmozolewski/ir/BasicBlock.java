@@ -0,0 +1,40 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instructions always run one after the other from the first, only the last one can go anywhere but the next.
+ * A block without a label can only be reached by falling through from the one before it.
+ */
+public class BasicBlock {
+
+    /** null if nothing jumps here */
+    public final String label;
+    private final List<Instruction> instructions = new ArrayList<Instruction>();
+
+    public BasicBlock(String label) {
+        this.label = label;
+    }
+
+    public List<Instruction> getInstructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    /** returns true if nothing more can go in the block */
+    public boolean isClosed() {
+        return !instructions.isEmpty() && getLast().endsBlock();
+    }
+
+    /** returns the last instruction, or null if the block is empty */
+    public Instruction getLast() {
+        return instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+    }
+
+    void add(Instruction instruction) {
+        if (isClosed())
+            throw new IllegalStateException("Block " + label + " already ends with " + getLast());
+        instructions.add(instruction);
+    }
+}
@@ -0,0 +1,39 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** dest = left op right */
+public class Binary extends Instruction {
+
+    public final Temp dest;
+    public final Operator op;
+    public final Temp left;
+    public final Temp right;
+
+    public Binary(Temp dest, Operator op, Temp left, Temp right) {
+        this.dest = dest;
+        this.op = op;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(left, right);
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitBinary(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + op + " " + left + ", " + right;
+    }
+}
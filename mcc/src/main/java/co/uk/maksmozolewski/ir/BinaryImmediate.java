@@ -0,0 +1,41 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** dest = left op imm, only adding and multiplying have a constant operand, for offsets and strides */
+public class BinaryImmediate extends Instruction {
+
+    public final Temp dest;
+    public final Operator op;
+    public final Temp left;
+    public final int imm;
+
+    public BinaryImmediate(Temp dest, Operator op, Temp left, int imm) {
+        if (op != Operator.ADD && op != Operator.MUL)
+            throw new IllegalArgumentException("No immediate form of " + op);
+        this.dest = dest;
+        this.op = op;
+        this.left = left;
+        this.imm = imm;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(left);
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitBinaryImmediate(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + op + " " + left + ", " + imm;
+    }
+}
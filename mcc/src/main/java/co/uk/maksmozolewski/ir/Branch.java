@@ -0,0 +1,38 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** goes to the block of the label if the condition is zero, or if it isn't, otherwise on to the next block */
+public class Branch extends Instruction {
+
+    public final Temp condition;
+    /** true to branch when the condition is zero, i.e. false */
+    public final boolean onZero;
+    public final String target;
+
+    public Branch(Temp condition, boolean onZero, String target) {
+        this.condition = condition;
+        this.onZero = onZero;
+        this.target = target;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(condition);
+    }
+
+    @Override
+    public boolean endsBlock() {
+        return true;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitBranch(this);
+    }
+
+    @Override
+    public String toString() {
+        return (onZero ? "ifzero " : "ifnonzero ") + condition + " jump " + target;
+    }
+}
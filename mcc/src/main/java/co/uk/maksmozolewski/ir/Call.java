@@ -0,0 +1,49 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * dest = function(arguments). The arguments are split the way the callee expects them,
+ * those going in registers by their position and the rest pushed in order.
+ */
+public class Call extends Instruction {
+
+    /** null if the result isn't used */
+    public final Temp dest;
+    public final String function;
+    /** the argument for $a0-$a3 at their index, null where that argument goes on the stack */
+    public final List<Temp> registerArgs;
+    /** the arguments pushed on the stack, the last one ends up right above the callee's frame pointer */
+    public final List<Temp> stackArgs;
+
+    public Call(Temp dest, String function, List<Temp> registerArgs, List<Temp> stackArgs) {
+        this.dest = dest;
+        this.function = function;
+        this.registerArgs = Collections.unmodifiableList(new ArrayList<Temp>(registerArgs));
+        this.stackArgs = Collections.unmodifiableList(new ArrayList<Temp>(stackArgs));
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        List<Temp> uses = new ArrayList<Temp>(temps(registerArgs.toArray(new Temp[0])));
+        uses.addAll(temps(stackArgs.toArray(new Temp[0])));
+        return uses;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitCall(this);
+    }
+
+    @Override
+    public String toString() {
+        return (dest == null ? "" : dest + " = ") + "call " + function + " " + registerArgs + " " + stackArgs;
+    }
+}
@@ -0,0 +1,35 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** dest = src */
+public class Copy extends Instruction {
+
+    public final Temp dest;
+    public final Temp src;
+
+    public Copy(Temp dest, Temp src) {
+        this.dest = dest;
+        this.src = src;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(src);
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitCopy(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + src;
+    }
+}
@@ -0,0 +1,96 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The body of a function as basic blocks in the order they're laid out, control falls from one into the next
+ * unless the first ends by going elsewhere.
+ */
+public class IRFunction {
+
+    public final String name;
+    private final List<BasicBlock> blocks = new ArrayList<BasicBlock>();
+    private int temps = 0;
+
+    public IRFunction(String name) {
+        this.name = name;
+        blocks.add(new BasicBlock(null));
+    }
+
+    /** returns a new temp, which can't be assumed to hold anything */
+    public Temp newTemp() {
+        return new Temp(temps++);
+    }
+
+    /** returns how many temps the function has, their ids go from 0 up to it */
+    public int getTempCount() {
+        return temps;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /** appends the instruction to the last block, starting a new one after it if the last one is closed */
+    public <I extends Instruction> I add(I instruction) {
+        BasicBlock last = blocks.get(blocks.size() - 1);
+        if (last.isClosed()) {
+            last = new BasicBlock(null);
+            blocks.add(last);
+        }
+        last.add(instruction);
+        return instruction;
+    }
+
+    /** starts a new block with the label, the ones before it fall through into it */
+    public void startBlock(String label) {
+        BasicBlock last = blocks.get(blocks.size() - 1);
+        if (last.label == null && last.getInstructions().isEmpty()) {
+            blocks.set(blocks.size() - 1, new BasicBlock(label));
+        } else {
+            blocks.add(new BasicBlock(label));
+        }
+    }
+
+    /** returns the blocks control can go to from the given one */
+    public List<BasicBlock> successors(BasicBlock block) {
+        Map<String, BasicBlock> labelled = new HashMap<String, BasicBlock>();
+        for (BasicBlock b : blocks) {
+            if (b.label != null)
+                labelled.put(b.label, b);
+        }
+
+        List<BasicBlock> out = new ArrayList<BasicBlock>();
+        Instruction last = block.getLast();
+        if (last instanceof Jump) {
+            out.add(labelled.get(((Jump) last).target));
+            return out;
+        }
+        if (last instanceof Return)
+            return out;
+        if (last instanceof Branch)
+            out.add(labelled.get(((Branch) last).target));
+
+        int next = blocks.indexOf(block) + 1;
+        if (next < blocks.size() && !out.contains(blocks.get(next)))
+            out.add(blocks.get(next));
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append(":\n");
+        for (BasicBlock block : blocks) {
+            if (block.label != null)
+                sb.append(block.label).append(":\n");
+            for (Instruction instruction : block.getInstructions()) {
+                sb.append("    ").append(instruction).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
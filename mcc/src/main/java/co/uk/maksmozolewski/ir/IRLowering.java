@@ -0,0 +1,463 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.uk.maksmozolewski.ast.*;
+import co.uk.maksmozolewski.gen.DataSegmentMemory;
+import co.uk.maksmozolewski.gen.FrameLayout;
+
+/**
+ * Lowers the bodies of functions to the IR. Expressions evaluate to a temp holding their value,
+ * arrays and structs evaluate to their address. Assignments only need the address of their lhs, which is
+ * found without loading it, variables in the frame and fields at a constant offset aren't given a temp of their own.
+ * Parameters which came in registers only ever live in temps.
+ */
+public class IRLowering extends BaseASTVisitor<Temp> {
+
+    /** where the memory an lvalue stands for is, base + offset */
+    private static final class Location {
+        final Temp base;
+        final int offset;
+
+        Location(Temp base, int offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
+
+    private final DataSegmentMemory globals;
+
+    private IRFunction function;
+    private FrameLayout layout;
+    /** the temps holding the parameters which came in $a0-$a3 */
+    private Map<VarDecl, Temp> paramValues;
+
+    private int uniqueNum = 0;
+
+    private int getUniqueNum() {
+        return uniqueNum++;
+    }
+
+    /**
+     * @param globals where the globals and string literals of the program are
+     */
+    public IRLowering(DataSegmentMemory globals) {
+        this.globals = globals;
+    }
+
+    /**
+     * Lowers the body of the function, its variables in the frame are where the layout puts them
+     * @param d
+     * @param layout
+     * @return
+     */
+    public IRFunction lower(FunDecl d, FrameLayout layout) {
+        function = new IRFunction(d.name);
+        this.layout = layout;
+        takeParameters(d);
+
+        d.block.accept(this);
+        return function;
+    }
+
+    /**
+     * Lowers a function of the standard library, which runs the system service of the given code on its arguments
+     * and gives back what the service does
+     * @param d
+     * @param service
+     * @return
+     */
+    public IRFunction lowerSyscall(FunDecl d, int service) {
+        function = new IRFunction(d.name);
+        layout = null;
+        takeParameters(d);
+
+        List<Temp> args = new ArrayList<Temp>();
+        for (VarDecl param : d.params) {
+            args.add(paramValues.get(param));
+        }
+        boolean returnsValue = d.funType != BaseType.VOID;
+        Temp result = emit(new Syscall(returnsValue ? function.newTemp() : null, service, args)).describe("code for " + d.name).getDef();
+        emit(new Return(result));
+        return function;
+    }
+
+    private void takeParameters(FunDecl d) {
+        paramValues = new HashMap<VarDecl, Temp>();
+        for (int i = 0; i < d.params.size(); i++) {
+            if (FrameLayout.passedInRegister(d, i)) {
+                Temp value = function.newTemp();
+                emit(new Parameter(value, i)).describe("take argument");
+                paramValues.put(d.params.get(i), value);
+            }
+        }
+    }
+
+    private <I extends Instruction> I emit(I instruction) {
+        return function.add(instruction);
+    }
+
+    // stmts
+
+    @Override
+    public Temp visitBlock(Block b) {
+        // the locals already have their place in the frame
+        visitAll(b.stmnts);
+        return null;
+    }
+
+    @Override
+    public Temp visitWhile(While w) {
+        String whileExitLabel = "$while_branch_exit_" + getUniqueNum();
+        String whileConditionLabel = "$while_branch_condition_" + getUniqueNum();
+
+        function.startBlock(whileConditionLabel);
+        Temp condition = w.condition.accept(this);
+        emit(new Branch(condition, true, whileExitLabel)).describe("condition check, jump to exit");
+
+        w.stmt.accept(this);
+        emit(new Jump(whileConditionLabel)).describe("jump to condition check");
+
+        function.startBlock(whileExitLabel);
+        return null;
+    }
+
+    @Override
+    public Temp visitIf(If i) {
+        String ifExitLabel = "$if_branch_exit_" + getUniqueNum();
+        String ifElseLabel = "$if_branch_else_" + getUniqueNum();
+
+        // on true fallthrough otherwise jump out
+        Temp condition = i.condition.accept(this);
+        if (i.elseStmt == null) {
+            emit(new Branch(condition, true, ifExitLabel)).describe("if stmt condition, jump to exit");
+            i.ifStmt.accept(this);
+        } else {
+            emit(new Branch(condition, true, ifElseLabel)).describe("if stmt condition, jump to else");
+            i.ifStmt.accept(this);
+            // a branch ending in a return doesn't need to jump over the other one
+            if (!endsInReturn())
+                emit(new Jump(ifExitLabel)).describe("leave if");
+
+            function.startBlock(ifElseLabel);
+            i.elseStmt.accept(this);
+        }
+
+        function.startBlock(ifExitLabel);
+        return null;
+    }
+
+    private boolean endsInReturn() {
+        List<BasicBlock> blocks = function.getBlocks();
+        return blocks.get(blocks.size() - 1).getLast() instanceof Return;
+    }
+
+    @Override
+    public Temp visitReturn(co.uk.maksmozolewski.ast.Return r) {
+        Temp value = r.exp == null ? null : r.exp.accept(this);
+        emit(new Return(value)).describe("return");
+        return null;
+    }
+
+    @Override
+    public Temp visitExprStmt(ExprStmt exprStmt) {
+        // the value is dropped, nothing reads its temp
+        exprStmt.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Temp visitAssign(Assign a) {
+        if (isRegisterParam(a.lhs)) {
+            Temp value = a.rhs.accept(this);
+            emit(new Copy(paramValues.get(((VarExpr) a.lhs).vd), value)).describe("assign parameter");
+            return null;
+        }
+
+        // the lhs is found before the rhs is evaluated
+        Location lhs = locate(a.lhs);
+        Temp value = a.rhs.accept(this);
+        emit(new Store(value, lhs.base, lhs.offset, sizeOf(a.lhs.type))).describe("assign value");
+        return null;
+    }
+
+    // expr
+
+    @Override
+    public Temp visitVarExpr(VarExpr v) {
+        // parameters which came in registers are only ever in their temps, nothing else writes them while an expression is evaluated
+        if (paramValues.containsKey(v.vd))
+            return paramValues.get(v.vd);
+        return valueAt(locate(v), v.type);
+    }
+
+    @Override
+    public Temp visitArrayAccessExpr(ArrayAccessExpr aae) {
+        return valueAt(locate(aae), aae.type);
+    }
+
+    @Override
+    public Temp visitFieldAccessExpr(FieldAccessExpr fae) {
+        return valueAt(locate(fae), fae.type);
+    }
+
+    @Override
+    public Temp visitValueAtExpr(ValueAtExpr vae) {
+        return valueAt(locate(vae), vae.type);
+    }
+
+    @Override
+    public Temp visitFunCallExpr(FunCallExpr fce) {
+        // every argument is evaluated before the call sets any of them in place
+        List<Temp> registerArgs = new ArrayList<Temp>();
+        List<Temp> stackArgs = new ArrayList<Temp>();
+        for (int i = 0; i < fce.args.size(); i++) {
+            Temp value = fce.args.get(i).accept(this);
+            if (FrameLayout.passedInRegister(fce.funDecl, i)) {
+                registerArgs.add(value);
+            } else {
+                registerArgs.add(null);
+                stackArgs.add(value);
+            }
+        }
+
+        Temp result = fce.funDecl.funType == BaseType.VOID ? null : function.newTemp();
+        emit(new Call(result, fce.funName, registerArgs, stackArgs)).describe("call");
+        return result;
+    }
+
+    @Override
+    public Temp visitBinOp(BinOp bo) {
+        if (bo.op == Op.AND || bo.op == Op.OR)
+            return shortCircuit(bo);
+
+        Temp lhs = bo.lhs.accept(this);
+        Temp rhs = bo.rhs.accept(this);
+
+        // the number added to or taken from a pointer counts elements of what it points to
+        boolean lhsIsPointer = bo.lhs.type.isPointerType();
+        boolean rhsIsPointer = bo.rhs.type.isPointerType();
+        if (bo.op == Op.ADD && rhsIsPointer && !lhsIsPointer)
+            lhs = scale(lhs, ((PointerType) bo.rhs.type).pointedToType.sizeOfType());
+        if ((bo.op == Op.ADD || bo.op == Op.SUB) && lhsIsPointer && !rhsIsPointer)
+            rhs = scale(rhs, ((PointerType) bo.lhs.type).pointedToType.sizeOfType());
+
+        Temp result = function.newTemp();
+        emit(new Binary(result, operatorOf(bo.op), lhs, rhs)).describe("operator " + bo.op);
+        return result;
+    }
+
+    /** the rhs of && and || is only evaluated if the lhs doesn't already decide the outcome */
+    private Temp shortCircuit(BinOp bo) {
+        boolean and = bo.op == Op.AND;
+        String name = and ? "$and_branch_" : "$or_branch_";
+        String decidedLabel = name + (and ? "false_" : "true_") + getUniqueNum();
+        String exitLabel = name + "exit_" + getUniqueNum();
+        Temp result = function.newTemp();
+
+        // && is decided by a false side, || by a true one
+        Temp lhs = bo.lhs.accept(this);
+        emit(new Branch(lhs, and, decidedLabel)).describe("operator " + bo.op + " lhs decides");
+        Temp rhs = bo.rhs.accept(this);
+        emit(new Branch(rhs, and, decidedLabel)).describe("rhs decides");
+
+        emit(new LoadConst(result, and ? 1 : 0)).describe(and ? "true outcome" : "false outcome");
+        emit(new Jump(exitLabel)).describe("exit " + bo.op);
+
+        function.startBlock(decidedLabel);
+        emit(new LoadConst(result, and ? 0 : 1)).describe(and ? "false outcome" : "true outcome");
+
+        function.startBlock(exitLabel);
+        return result;
+    }
+
+    private static Operator operatorOf(Op op) {
+        switch (op) {
+            case ADD: return Operator.ADD;
+            case SUB: return Operator.SUB;
+            case MUL: return Operator.MUL;
+            case DIV: return Operator.DIV;
+            case MOD: return Operator.MOD;
+            case EQ: return Operator.EQ;
+            case NE: return Operator.NE;
+            case LT: return Operator.LT;
+            case LE: return Operator.LE;
+            case GT: return Operator.GT;
+            case GE: return Operator.GE;
+            default:
+                // && and || are branches
+                throw new IllegalArgumentException("No operator for " + op);
+        }
+    }
+
+    @Override
+    public Temp visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
+        Temp out = function.newTemp();
+        emit(new LoadConst(out, sizeOfExpr.val.sizeOfType())).describe("size of evaluation");
+        return out;
+    }
+
+    @Override
+    public Temp visitTypecastExpr(TypecastExpr typecastExpr) {
+        return typecastExpr.castedExpr.accept(this);
+    }
+
+    @Override
+    public Temp visitIntLiteral(IntLiteral il) {
+        Temp val = function.newTemp();
+        emit(new LoadConst(val, il.val)).describe("load 4 byte integer");
+        return val;
+    }
+
+    @Override
+    public Temp visitStrLiteral(StrLiteral sl) {
+        Temp address = function.newTemp();
+        globals.putStringConstant(sl);
+        emit(new LoadAddress(address, globals.getStringLabel(sl))).describe("load str literal location");
+        return address;
+    }
+
+    @Override
+    public Temp visitChrLiteral(ChrLiteral cl) {
+        Temp val = function.newTemp();
+        emit(new LoadConst(val, cl.val)).describe("load char");
+        return val;
+    }
+
+    // addresses
+
+    /**
+     * Returns where the variable, element, field or pointed to value the expression stands for is.
+     * Anything else can only be an array or struct, whose value is its address.
+     */
+    private Location locate(Expr e) {
+        if (e instanceof VarExpr) {
+            VarDecl var = ((VarExpr) e).vd;
+            if (layout.contains(var))
+                return new Location(Temp.FRAME, layout.getOffset(var));
+
+            Temp address = function.newTemp();
+            emit(new LoadAddress(address, globals.getVariableLabel(var))).describe("load variable address");
+            return new Location(address, 0);
+
+        } else if (e instanceof ArrayAccessExpr) {
+            ArrayAccessExpr aae = (ArrayAccessExpr) e;
+            // an array is indexed from where it is, a pointer from the address it holds
+            Location array = aae.array.type.isArrayType() ? locate(aae.array) : new Location(aae.array.accept(this), 0);
+            Temp offset = scale(aae.idx.accept(this), aae.type.sizeOfType());
+
+            Temp address = function.newTemp();
+            emit(new Binary(address, Operator.ADD, array.base, offset)).describe("find address of element");
+            return new Location(address, array.offset);
+
+        } else if (e instanceof FieldAccessExpr) {
+            FieldAccessExpr fae = (FieldAccessExpr) e;
+            // the field's offset was worked out with the rest of the struct's layout
+            int offset = ((StructType) fae.structure.type).dec.getLayout().getOffset(fae.fieldName);
+            if (offset == -1)
+                // should not reach here
+                throw new Error("Should not happen, field does not exist");
+
+            Location structure = locate(fae.structure);
+            return new Location(structure.base, structure.offset + offset);
+
+        } else if (e instanceof ValueAtExpr) {
+            return new Location(((ValueAtExpr) e).ptr.accept(this), 0);
+
+        } else if (e instanceof TypecastExpr) {
+            return locate(((TypecastExpr) e).castedExpr);
+        }
+
+        return new Location(e.accept(this), 0);
+    }
+
+    /** loads the value of the given type from the location, arrays and structs are evaluated by reference */
+    private Temp valueAt(Location location, Type type) {
+        if (type.isArrayType() || type.isStructTypeType())
+            return addressOf(location);
+
+        Temp value = function.newTemp();
+        emit(new Load(value, location.base, location.offset, sizeOf(type))).describe("load value");
+        return value;
+    }
+
+    /** returns a temp holding the address of the location */
+    private Temp addressOf(Location location) {
+        if (location.offset == 0 && !location.base.isFrame())
+            return location.base;
+
+        Temp address = function.newTemp();
+        emit(new BinaryImmediate(address, Operator.ADD, location.base, location.offset)).describe("find address");
+        return address;
+    }
+
+    /** returns the index multiplied by the size of the elements */
+    private Temp scale(Temp idx, int stride) {
+        if (stride == 1)
+            return idx;
+
+        Temp scaled = function.newTemp();
+        emit(new BinaryImmediate(scaled, Operator.MUL, idx, stride)).describe("multiply idx by element size " + stride);
+        return scaled;
+    }
+
+    /** words are read and written whole unless the type is a single byte */
+    private static int sizeOf(Type type) {
+        return type.sizeOfType() == 1 ? 1 : 4;
+    }
+
+    /** returns true if the expression is a parameter which came in a register, which has no address */
+    private boolean isRegisterParam(Expr e) {
+        return e instanceof VarExpr && paramValues.containsKey(((VarExpr) e).vd);
+    }
+
+    // nothing else is part of a function's body
+
+    @Override
+    public Temp visitVarDecl(VarDecl vd) {
+        return null;
+    }
+
+    @Override
+    public Temp visitOp(Op o) {
+        return null;
+    }
+
+    @Override
+    public Temp visitProgram(Program p) {
+        throw new Error("Should not happen, only function bodies are lowered");
+    }
+
+    @Override
+    public Temp visitFunDecl(FunDecl p) {
+        throw new Error("Should not happen, functions are lowered with lower()");
+    }
+
+    @Override
+    public Temp visitStructTypeDecl(StructTypeDecl st) {
+        return null;
+    }
+
+    @Override
+    public Temp visitBaseType(BaseType bt) {
+        return null;
+    }
+
+    @Override
+    public Temp visitPointerType(PointerType pt) {
+        return null;
+    }
+
+    @Override
+    public Temp visitStructType(StructType st) {
+        return null;
+    }
+
+    @Override
+    public Temp visitArrayType(ArrayType at) {
+        return null;
+    }
+}
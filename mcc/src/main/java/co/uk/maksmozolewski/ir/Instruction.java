@@ -0,0 +1,52 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single three address instruction, reading at most a couple of temps and writing at most one.
+ * Only loads and stores touch memory.
+ */
+public abstract class Instruction {
+
+    /** what the instruction is for in the source, carried through to the generated code */
+    private String comment;
+
+    /** returns the temp the instruction writes, or null if it doesn't write one */
+    public Temp getDef() {
+        return null;
+    }
+
+    /** returns the temps the instruction reads, the frame is never among them */
+    public List<Temp> getUses() {
+        return Collections.emptyList();
+    }
+
+    /** returns true if the instruction can go somewhere other than the next one, so has to be the last of its block */
+    public boolean endsBlock() {
+        return false;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    /** sets the comment and returns the instruction */
+    public Instruction describe(String comment) {
+        this.comment = comment;
+        return this;
+    }
+
+    public abstract <T> T accept(InstructionVisitor<T> v);
+
+    /** the given temps without nulls and the frame */
+    protected static List<Temp> temps(Temp... temps) {
+        List<Temp> out = new ArrayList<Temp>(temps.length);
+        for (Temp t : temps) {
+            if (t != null && !t.isFrame())
+                out.add(t);
+        }
+        return out;
+    }
+}
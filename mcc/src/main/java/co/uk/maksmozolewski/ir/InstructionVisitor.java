@@ -0,0 +1,25 @@
+package co.uk.maksmozolewski.ir;
+
+public interface InstructionVisitor<T> {
+
+    // values
+    public T visitLoadConst(LoadConst lc);
+    public T visitLoadAddress(LoadAddress la);
+    public T visitCopy(Copy c);
+    public T visitBinary(Binary b);
+    public T visitBinaryImmediate(BinaryImmediate bi);
+    public T visitParameter(Parameter p);
+
+    // memory
+    public T visitLoad(Load l);
+    public T visitStore(Store s);
+
+    // calls
+    public T visitCall(Call c);
+    public T visitSyscall(Syscall s);
+
+    // control flow
+    public T visitJump(Jump j);
+    public T visitBranch(Branch b);
+    public T visitReturn(Return r);
+}
@@ -0,0 +1,26 @@
+package co.uk.maksmozolewski.ir;
+
+/** goes to the block of the label */
+public class Jump extends Instruction {
+
+    public final String target;
+
+    public Jump(String target) {
+        this.target = target;
+    }
+
+    @Override
+    public boolean endsBlock() {
+        return true;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitJump(this);
+    }
+
+    @Override
+    public String toString() {
+        return "jump " + target;
+    }
+}
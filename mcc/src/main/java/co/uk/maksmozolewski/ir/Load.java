@@ -0,0 +1,40 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** dest = the byte or word at base + offset */
+public class Load extends Instruction {
+
+    public final Temp dest;
+    public final Temp base;
+    public final int offset;
+    /** bytes read, 1 or 4 */
+    public final int size;
+
+    public Load(Temp dest, Temp base, int offset, int size) {
+        this.dest = dest;
+        this.base = base;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(base);
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitLoad(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = load" + size + " " + offset + "(" + base + ")";
+    }
+}
@@ -0,0 +1,28 @@
+package co.uk.maksmozolewski.ir;
+
+/** dest = the address of the label, of a global or a string in the data segment */
+public class LoadAddress extends Instruction {
+
+    public final Temp dest;
+    public final String label;
+
+    public LoadAddress(Temp dest, String label) {
+        this.dest = dest;
+        this.label = label;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitLoadAddress(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = &" + label;
+    }
+}
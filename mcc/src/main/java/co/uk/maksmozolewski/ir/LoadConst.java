@@ -0,0 +1,28 @@
+package co.uk.maksmozolewski.ir;
+
+/** dest = value */
+public class LoadConst extends Instruction {
+
+    public final Temp dest;
+    public final int value;
+
+    public LoadConst(Temp dest, int value) {
+        this.dest = dest;
+        this.value = value;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitLoadConst(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + value;
+    }
+}
@@ -0,0 +1,283 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+import co.uk.maksmozolewski.gen.MipsWriter;
+import co.uk.maksmozolewski.gen.MipsWriter.WriteTarget;
+import co.uk.maksmozolewski.gen.Register;
+import co.uk.maksmozolewski.gen.RegisterAllocation;
+
+/**
+ * Writes the body of a function in the IR as MIPS, every temp in the register it's been given,
+ * so values kept in the register they're passed in are moved into or out of it by nothing.
+ * Spilled temps are loaded into one of the spill registers right before the instruction reading them
+ * and stored right after the one writing them. Only the body is written, the prologue and epilogue are left
+ * to the code generator, which knows what the function has to save. Returns put their value in $v0 and branch to the epilogue.
+ */
+public class MipsBackend implements InstructionVisitor<Void> {
+
+    /** registers spilled values are worked on in, never given to a temp */
+    private static final Register[] SPILL_REGISTERS = {Register.tempVal1, Register.tempVal2};
+
+    private final MipsWriter writer;
+
+    private RegisterAllocation allocation;
+    /** where the epilogue of the function being written is */
+    private String returnLabel;
+    /** the instruction the function's body ends with, which falls through into the epilogue */
+    private Instruction lastInstruction;
+
+    public MipsBackend(MipsWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the body of the function
+     * @param f
+     * @param allocation where the function's temps are kept
+     * @param returnLabel the label of the epilogue, which has to come right after the body
+     */
+    public void emit(IRFunction f, RegisterAllocation allocation, String returnLabel) {
+        this.allocation = allocation;
+        this.returnLabel = returnLabel;
+
+        lastInstruction = null;
+        for (BasicBlock block : f.getBlocks()) {
+            if (block.getLast() != null)
+                lastInstruction = block.getLast();
+        }
+
+        for (BasicBlock block : f.getBlocks()) {
+            if (block.label != null)
+                writer.writeLabelInlineNl(WriteTarget.TEXT, block.label);
+            for (Instruction instruction : block.getInstructions()) {
+                instruction.accept(this);
+            }
+        }
+    }
+
+    /** returns the register holding the temp, loading it into the spill register of the given index first if it's spilled */
+    private Register use(Temp t, int spillRegister) {
+        Register r = allocation.getRegister(t);
+        if (r != null)
+            return r;
+        r = SPILL_REGISTERS[spillRegister];
+        writer.writeLw(r, Register.fp, allocation.getSpillOffset(t), "reload spilled value");
+        return r;
+    }
+
+    /**
+     * returns the register the temp is written to, a spilled one goes in the first spill register until it's stored by spill().
+     * An instruction reads all its operands before writing, so that can be one of the registers they're in.
+     */
+    private Register def(Temp t) {
+        Register r = allocation.getRegister(t);
+        return r == null ? SPILL_REGISTERS[0] : r;
+    }
+
+    /** stores the temp just written by the instruction before if it's spilled */
+    private void spill(Temp t) {
+        Integer offset = allocation.getSpillOffset(t);
+        if (offset != null)
+            writer.writeSw(SPILL_REGISTERS[0], Register.fp, offset, "spill value");
+    }
+
+    /** moves between registers, unless they're the same one */
+    private void move(Register to, Register from, String comment) {
+        if (to != from)
+            writer.writeMove(to, from, comment);
+    }
+
+    private static String comment(Instruction i, String otherwise) {
+        return i.getComment() == null ? otherwise : i.getComment();
+    }
+
+    // values
+
+    @Override
+    public Void visitLoadConst(LoadConst lc) {
+        // ori takes the constant unsigned, so only negative ones are added to $zero
+        if (lc.value < 0) {
+            writer.writeAddI(def(lc.dest), Register.zero, lc.value, comment(lc, "load constant"));
+        } else {
+            writer.writeOrI(def(lc.dest), Register.zero, lc.value, comment(lc, "load constant"));
+        }
+        spill(lc.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitLoadAddress(LoadAddress la) {
+        writer.writeLa(def(la.dest), la.label, comment(la, "load address") + ": " + la.label);
+        spill(la.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitCopy(Copy c) {
+        // coalesced copies are left out, as are those nothing reads
+        if (allocation.isSameLocation(c.dest, c.src) || allocation.isResultUnused(c))
+            return null;
+        Register src = use(c.src, 0);
+        move(def(c.dest), src, comment(c, "copy"));
+        spill(c.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Binary b) {
+        Register left = use(b.left, 0);
+        Register right = use(b.right, 1);
+        Register dest = def(b.dest);
+        String comment = comment(b, "operator " + b.op);
+        switch (b.op) {
+            case ADD: writer.writeAdd(dest, left, right, comment); break;
+            case SUB: writer.writeSub(dest, left, right, comment); break;
+            case MUL:
+                writer.writeMult(left, right, comment);
+                writer.writeMflo(dest, "load lower 32 bit result");
+                break;
+            case DIV:
+                writer.writeDiv(left, right, comment);
+                writer.writeMflo(dest, "load div quotient");
+                break;
+            case MOD:
+                writer.writeDiv(left, right, comment);
+                writer.writeMfhi(dest, "load div remainder");
+                break;
+            case EQ: writer.writeSeq(dest, left, right, comment); break;
+            case NE: writer.writeSne(dest, left, right, comment); break;
+            case LT: writer.writeSlt(dest, left, right, comment); break;
+            case LE: writer.writeSle(dest, left, right, comment); break;
+            case GT: writer.writeSgt(dest, left, right, comment); break;
+            case GE: writer.writeSge(dest, left, right, comment); break;
+        }
+        spill(b.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryImmediate(BinaryImmediate bi) {
+        Register left = use(bi.left, 0);
+        Register dest = def(bi.dest);
+        String comment = comment(bi, "operator " + bi.op);
+        if (bi.op == Operator.ADD) {
+            writer.writeAddI(dest, left, bi.imm, comment);
+        } else if (Integer.bitCount(bi.imm) == 1) {
+            // multiplying by a power of two is a shift
+            writer.writeSll(dest, left, Integer.numberOfTrailingZeros(bi.imm), comment);
+        } else {
+            writer.writeMul(dest, left, bi.imm, comment);
+        }
+        spill(bi.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitParameter(Parameter p) {
+        if (allocation.isResultUnused(p))
+            return null;
+        move(def(p.dest), Register.paramRegs[p.index], comment(p, "take argument"));
+        spill(p.dest);
+        return null;
+    }
+
+    // memory
+
+    @Override
+    public Void visitLoad(Load l) {
+        Register base = use(l.base, 0);
+        if (l.size == 1) {
+            writer.writeLb(def(l.dest), base, l.offset, comment(l, "load byte"));
+        } else {
+            writer.writeLw(def(l.dest), base, l.offset, comment(l, "load word"));
+        }
+        spill(l.dest);
+        return null;
+    }
+
+    @Override
+    public Void visitStore(Store s) {
+        Register value = use(s.value, 0);
+        Register base = use(s.base, 1);
+        if (s.size == 1) {
+            writer.writeSb(value, base, s.offset, comment(s, "store byte"));
+        } else {
+            writer.writeSw(value, base, s.offset, comment(s, "store word"));
+        }
+        return null;
+    }
+
+    // calls
+
+    @Override
+    public Void visitCall(Call c) {
+        // nothing needs saving, values live across the call are only ever given callee saved registers
+        // the arguments which don't go in registers take a word each at the top of the stack, where the callee's layout expects them
+        for (Temp arg : c.stackArgs) {
+            writer.writeSw(use(arg, 0), Register.sp, 0, "push argument");
+            writer.writeAddI(Register.sp, Register.sp, -4, "expand stack");
+        }
+        passArguments(c.registerArgs);
+
+        writer.writeJal(c.function, comment(c, "call"));
+        if (c.dest != null && !allocation.isResultUnused(c)) {
+            move(def(c.dest), Register.v0, "move register to permament");
+            spill(c.dest);
+        }
+
+        // the callee gives back the stack as it found it, with the arguments still on top
+        if (!c.stackArgs.isEmpty())
+            writer.writeAddI(Register.sp, Register.sp, c.stackArgs.size() * 4, "shrink stack");
+        return null;
+    }
+
+    @Override
+    public Void visitSyscall(Syscall s) {
+        passArguments(s.args);
+        writer.writeAddI(Register.v0, Register.zero, s.service, comment(s, "service code"));
+        writer.writeSyscall("system call " + s.service);
+        if (s.dest != null && !allocation.isResultUnused(s)) {
+            move(def(s.dest), Register.v0, "move register to permament");
+            spill(s.dest);
+        }
+        return null;
+    }
+
+    /** last to first, so the last one evaluated can go straight into its register */
+    private void passArguments(List<Temp> args) {
+        for (int i = args.size() - 1; i >= 0; i--) {
+            if (args.get(i) != null)
+                move(Register.paramRegs[i], use(args.get(i), 0), "pass argument");
+        }
+    }
+
+    // control flow
+
+    @Override
+    public Void visitJump(Jump j) {
+        writer.writeB(j.target, comment(j, "jump"));
+        return null;
+    }
+
+    @Override
+    public Void visitBranch(Branch b) {
+        if (b.onZero) {
+            writer.writeBeq(use(b.condition, 0), Register.zero, b.target, comment(b, "branch if false"));
+        } else {
+            writer.writeBne(use(b.condition, 0), Register.zero, b.target, comment(b, "branch if true"));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return r) {
+        if (r.value != null)
+            move(Register.v0, use(r.value, 0), "move return val");
+
+        // every return shares the epilogue at the end of the function
+        if (r != lastInstruction)
+            writer.writeB(returnLabel, comment(r, "return"));
+        return null;
+    }
+}
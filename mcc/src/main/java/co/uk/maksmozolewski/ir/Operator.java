@@ -0,0 +1,11 @@
+package co.uk.maksmozolewski.ir;
+
+/** the operations on two words, comparisons give 1 when they hold and 0 otherwise */
+public enum Operator {
+    ADD, SUB, MUL, DIV, MOD, EQ, NE, LT, LE, GT, GE;
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
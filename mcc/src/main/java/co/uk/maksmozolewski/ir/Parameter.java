@@ -0,0 +1,28 @@
+package co.uk.maksmozolewski.ir;
+
+/** dest = the argument passed in the register of the given position, taken before anything can overwrite it */
+public class Parameter extends Instruction {
+
+    public final Temp dest;
+    public final int index;
+
+    public Parameter(Temp dest, int index) {
+        this.dest = dest;
+        this.index = index;
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitParameter(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = param " + index;
+    }
+}
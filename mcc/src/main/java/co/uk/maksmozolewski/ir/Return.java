@@ -0,0 +1,34 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** leaves the function, giving back the value if there is one */
+public class Return extends Instruction {
+
+    /** null for functions returning nothing */
+    public final Temp value;
+
+    public Return(Temp value) {
+        this.value = value;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(value);
+    }
+
+    @Override
+    public boolean endsBlock() {
+        return true;
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitReturn(this);
+    }
+
+    @Override
+    public String toString() {
+        return value == null ? "return" : "return " + value;
+    }
+}
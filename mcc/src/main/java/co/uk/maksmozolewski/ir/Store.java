@@ -0,0 +1,35 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.List;
+
+/** the byte or word at base + offset = value */
+public class Store extends Instruction {
+
+    public final Temp value;
+    public final Temp base;
+    public final int offset;
+    /** bytes written, 1 or 4 */
+    public final int size;
+
+    public Store(Temp value, Temp base, int offset, int size) {
+        this.value = value;
+        this.base = base;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(value, base);
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitStore(this);
+    }
+
+    @Override
+    public String toString() {
+        return "store" + size + " " + offset + "(" + base + "), " + value;
+    }
+}
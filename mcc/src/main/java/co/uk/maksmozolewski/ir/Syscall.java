@@ -0,0 +1,40 @@
+package co.uk.maksmozolewski.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** dest = the system service of the given code run on the arguments, which go in $a0-$a3 */
+public class Syscall extends Instruction {
+
+    /** null if the service gives nothing back */
+    public final Temp dest;
+    public final int service;
+    public final List<Temp> args;
+
+    public Syscall(Temp dest, int service, List<Temp> args) {
+        this.dest = dest;
+        this.service = service;
+        this.args = Collections.unmodifiableList(new ArrayList<Temp>(args));
+    }
+
+    @Override
+    public Temp getDef() {
+        return dest;
+    }
+
+    @Override
+    public List<Temp> getUses() {
+        return temps(args.toArray(new Temp[0]));
+    }
+
+    @Override
+    public <T> T accept(InstructionVisitor<T> v) {
+        return v.visitSyscall(this);
+    }
+
+    @Override
+    public String toString() {
+        return (dest == null ? "" : dest + " = ") + "syscall " + service + " " + args;
+    }
+}
@@ -0,0 +1,26 @@
+package co.uk.maksmozolewski.ir;
+
+/**
+ * A virtual register of the IR, holding one word. There are as many as a function needs, the register allocator
+ * fits them into the physical ones before the backend writes them out.
+ */
+public final class Temp {
+
+    /** the base of the function's frame, never written by the IR, the variables in the frame are loaded and stored off it */
+    public static final Temp FRAME = new Temp(-1);
+
+    public final int id;
+
+    Temp(int id) {
+        this.id = id;
+    }
+
+    public boolean isFrame() {
+        return this == FRAME;
+    }
+
+    @Override
+    public String toString() {
+        return isFrame() ? "%fp" : "%t" + id;
+    }
+}
@@ -0,0 +1,112 @@
+package co.uk.maksmozolewski.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Hands out a single canonical String and a small integer id for every distinct piece of text given to it.
+ * Text which is already in the pool can be looked up straight from the scanner's buffer without creating a String.
+ */
+public class InternPool {
+
+    /** the canonical strings, indexed by id */
+    private String[] strings = new String[64];
+
+    private int size = 0;
+
+    /** open addressed hash table of id + 1, 0 marks an empty slot. Its length is always a power of two */
+    private int[] table = new int[128];
+
+    /**
+     * Returns the id of the given string, adding it to the pool if it's not in there yet
+     * @param s
+     * @return id
+     */
+    public int intern(String s){
+        int slot = s.hashCode() & (table.length - 1);
+        int entry;
+        while((entry = table[slot]) != 0){
+            if(strings[entry - 1].equals(s)){
+                return entry - 1;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return add(s, slot);
+    }
+
+    /**
+     * Returns the id of the text between the two offsets in the scanner, start inclusive, end exclusive
+     * @param scanner
+     * @param start
+     * @param end
+     * @return id
+     */
+    int intern(Scanner scanner, int start, int end){
+        // same hash as String.hashCode so both kinds of lookup agree on slots
+        int hash = 0;
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + scanner.charAt(i);
+        }
+
+        int slot = hash & (table.length - 1);
+        int entry;
+        while((entry = table[slot]) != 0){
+            if(textEquals(strings[entry - 1], scanner, start, end)){
+                return entry - 1;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return add(scanner.getText(start, end), slot);
+    }
+
+    /**
+     * Returns the canonical string with the given id
+     * @param id
+     * @return
+     */
+    public String get(int id){
+        return strings[id];
+    }
+
+    /**
+     * Returns the number of distinct strings in the pool
+     * @return
+     */
+    public int size(){
+        return size;
+    }
+
+    private static boolean textEquals(String s, Scanner scanner, int start, int end){
+        if(s.length() != end - start)
+            return false;
+        for(int i = 0; i < s.length(); i++){
+            if(s.charAt(i) != scanner.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private int add(String s, int slot){
+        if(size == strings.length){
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = s;
+        table[slot] = ++size;
+
+        // keep the table at most half full
+        if(size * 2 > table.length){
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private void rehash(){
+        table = new int[table.length * 2];
+        for(int id = 0; id < size; id++){
+            int slot = strings[id].hashCode() & (table.length - 1);
+            while(table[slot] != 0){
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = id + 1;
+        }
+    }
+}
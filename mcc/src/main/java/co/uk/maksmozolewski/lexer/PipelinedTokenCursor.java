@@ -0,0 +1,187 @@
+package co.uk.maksmozolewski.lexer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+import co.uk.maksmozolewski.util.Position;
+
+/**
+ * A token cursor which runs the tokeniser on a thread of its own so lexing overlaps with parsing.
+ * Tokens are handed over in fixed size batches, and only a fixed number of batches ever exist. Once all of them are
+ * waiting to be parsed the tokeniser blocks, so memory use doesn't depend on the size of the file.
+ */
+public class PipelinedTokenCursor implements TokenCursor {
+
+    /** number of tokens in a batch */
+    public static final int BATCH_SIZE = 1024;
+
+    /** number of batches shared between the two threads */
+    public static final int BATCH_COUNT = 8;
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private static class Batch {
+        final byte[] classes = new byte[BATCH_SIZE];
+        final int[] starts = new int[BATCH_SIZE];
+        final int[] dataIds = new int[BATCH_SIZE];
+        final String[] data = new String[BATCH_SIZE];
+        int size;
+        /** true if this batch ends with the EOF token */
+        boolean last;
+        /** set on the batch handed over in place of the rest of the tokens if the tokeniser failed */
+        Throwable failure;
+    }
+
+    private final Scanner scanner;
+
+    /** batches filled by the tokeniser waiting to be parsed */
+    private final BlockingQueue<Batch> full = new ArrayBlockingQueue<Batch>(BATCH_COUNT);
+
+    /** batches the parser is done with waiting to be filled again */
+    private final BlockingQueue<Batch> empty = new ArrayBlockingQueue<Batch>(BATCH_COUNT);
+
+    /** the batch holding the current token */
+    private Batch current;
+
+    /** the batch after the current one, only taken when lookahead reaches into it */
+    private Batch next;
+
+    /** index of the current token within the current batch */
+    private int idx = 0;
+
+    /** index of the first token of the current batch within the whole file */
+    private int batchBase = 0;
+
+    public PipelinedTokenCursor(Tokeniser tokeniser){
+        this.scanner = tokeniser.getScanner();
+        for(int i = 0; i < BATCH_COUNT; i++){
+            empty.add(new Batch());
+        }
+
+        Thread producer = new Thread(() -> produce(tokeniser), "tokeniser");
+        // if parsing stops before EOF the tokeniser might be left waiting for an empty batch forever
+        producer.setDaemon(true);
+        producer.start();
+
+        current = takeFull();
+    }
+
+    private void produce(Tokeniser tokeniser){
+        // the pool belongs to this thread, the parser only sees the strings it hands out
+        InternPool pool = new InternPool();
+        try {
+            boolean done = false;
+            while(!done){
+                Batch batch = take(empty);
+                batch.size = 0;
+                while(batch.size < BATCH_SIZE){
+                    TokenClass tokenClass = tokeniser.scanToken();
+                    int dataId = tokeniser.internData(tokenClass, pool);
+                    batch.classes[batch.size] = (byte)tokenClass.ordinal();
+                    batch.starts[batch.size] = tokeniser.getTokenStart();
+                    batch.dataIds[batch.size] = dataId;
+                    batch.data[batch.size] = dataId == TokenStream.NO_DATA ? "" : pool.get(dataId);
+                    batch.size++;
+
+                    if(tokenClass == TokenClass.EOF){
+                        done = true;
+                        break;
+                    }
+                }
+                batch.last = done;
+                full.put(batch);
+            }
+        } catch (Throwable t) {
+            // the parser would wait for the next batch forever, so it's handed the failure instead
+            Batch failed = new Batch();
+            failed.last = true;
+            failed.failure = t;
+            try {
+                full.put(failed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** takes the next batch of tokens, rethrowing on this thread whatever made the tokeniser fail */
+    private Batch takeFull(){
+        Batch batch = take(full);
+        if(batch.failure instanceof RuntimeException)
+            throw (RuntimeException)batch.failure;
+        if(batch.failure instanceof Error)
+            throw (Error)batch.failure;
+        if(batch.failure != null)
+            throw new IllegalStateException("Tokenising failed", batch.failure);
+        return batch;
+    }
+
+    private static Batch take(BlockingQueue<Batch> queue){
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tokens", e);
+        }
+    }
+
+    @Override
+    public TokenClass peekClass(int distance) {
+        assert distance < BATCH_SIZE;
+        int i = idx + distance;
+        if(i < current.size){
+            return CLASSES[current.classes[i]];
+        }
+        if(current.last){
+            // anything past EOF is EOF
+            return TokenClass.EOF;
+        }
+
+        if(next == null){
+            next = takeFull();
+        }
+        i -= current.size;
+        return CLASSES[next.classes[Math.min(i, next.size - 1)]];
+    }
+
+    @Override
+    public void advance() {
+        if(idx + 1 < current.size){
+            idx++;
+            return;
+        }
+        if(current.last){
+            // stay on EOF
+            return;
+        }
+
+        Batch done = current;
+        current = next != null ? next : takeFull();
+        next = null;
+        batchBase += done.size;
+        idx = 0;
+        empty.add(done);
+    }
+
+    @Override
+    public int index() {
+        return batchBase + idx;
+    }
+
+    @Override
+    public String data() {
+        return current.data[idx];
+    }
+
+    @Override
+    public int dataId() {
+        return current.dataIds[idx];
+    }
+
+    @Override
+    public Position position() {
+        int start = current.starts[idx];
+        return new Position(scanner.getLine(start), scanner.getColumn(start));
+    }
+}
@@ -1,60 +1,107 @@
 package co.uk.maksmozolewski.lexer;
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
+/**
+ * Reads the whole source file into memory up front and hands out characters by offset.
+ * Lines and columns are not tracked while scanning, they are worked out from a table of line start offsets
+ * only when somebody asks for them.
+ */
 public class Scanner {
-    /** the file reader */
-    private BufferedReader input;
 
-    /** the peeked character if peeked and -1 otherwise */
-    private int peekedVal = -1;
+    /** files larger than this are memory mapped and decoded in one go instead of being read through a reader */
+    private static final long MAP_THRESHOLD_BYTES = 1 << 20;
 
-    /** current line in the file */
-    private int line = 1;
+    /** the contents of the file, only the first length characters are valid */
+    private final char[] buffer;
 
-    /** current column in the file */
-    private int column = 0;
+    /** number of characters in the file */
+    private final int length;
 
-    public Scanner(File sourceFile) throws FileNotFoundException {
-        input = new BufferedReader(new FileReader(sourceFile));
-    }
+    /** offset of the next character to be returned */
+    private int offset = 0;
 
     /**
-     * Returns the next character in the file
-     * @return
+     * offsets of the first character of every line, built the first time a position is needed.
+     * Positions may be asked for from more than one thread, so the table is published through a volatile write
+     * after lineCount is set.
      */
-    public char next() throws IOException,EOFException{
+    private volatile int[] lineStarts;
+
+    /** number of valid entries in lineStarts */
+    private int lineCount;
 
-        // if we peeked before, return the peeked char
-        Boolean havePeeked = peekedVal != -1;
-        
-        char nextChar;
-        if (havePeeked){
-            nextChar = (char)peekedVal;
-            peekedVal = -1;
-        } else {
-            int nextVal = input.read();
-            if(nextVal == -1){
-                throw new EOFException();
+    /** index of the line found by the last lookup, positions are mostly asked for in order. Only ever used as a hint */
+    private int lastLineIdx = 0;
+
+    private boolean closed = false;
+
+    private final File sourceFile;
+
+    public Scanner(File sourceFile) throws FileNotFoundException, IOException {
+        this.sourceFile = sourceFile;
+        CharBuffer contents = sourceFile.length() > MAP_THRESHOLD_BYTES ?
+            readMapped(sourceFile) :
+            readBuffered(sourceFile);
+
+        buffer = contents.array();
+        length = contents.limit();
+    }
+
+    private static CharBuffer readBuffered(File sourceFile) throws FileNotFoundException, IOException {
+        try (Reader reader = new FileReader(sourceFile)) {
+            // there are never more characters than bytes, the extra one lets us see EOF without growing
+            char[] chars = new char[(int)sourceFile.length() + 1];
+            int read = 0;
+            int n;
+            while((n = reader.read(chars, read, chars.length - read)) != -1){
+                read += n;
+                if(read == chars.length){
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
             }
-            nextChar = (char)nextVal;
+            return CharBuffer.wrap(chars, 0, read);
         }
+    }
 
-        //advance line and column numbers,
-        // \n should work for counting lines on both Unix and non-Unix systems
-        if (nextChar == '\n') {
-            line++;
-            column =0;
-        } else {
-            column++;
+    private static CharBuffer readMapped(File sourceFile) throws FileNotFoundException, IOException {
+        try (FileInputStream input = new FileInputStream(sourceFile);
+             FileChannel channel = input.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // decoding always gives back a heap buffer so array() is safe to use
+            return Charset.defaultCharset().decode(mapped);
         }
+    }
 
-        return nextChar;
+    /**
+     * Returns the file being scanned
+     * @return
+     */
+    public File getFile(){
+        return sourceFile;
+    }
+
+    /**
+     * Returns the next character in the file
+     * @return
+     */
+    public char next() throws IOException,EOFException{
+        ensureOpen();
+        if(offset >= length){
+            throw new EOFException();
+        }
+        return buffer[offset++];
     }
 
     /**
@@ -62,22 +109,64 @@ public class Scanner {
      * @return next character
      */
     public char peek() throws IOException{
-        
-        Boolean havePeeked = peekedVal != -1;
-        
-        char peekedChar;
-        if (havePeeked){
-            peekedChar = (char) peekedVal;
-        } else {
-            int readVal = input.read();
-            if(readVal == -1){
-                throw new EOFException();
-            }
-            peekedChar = (char) readVal;
-            peekedVal = readVal;
+        ensureOpen();
+        if(offset >= length){
+            throw new EOFException();
+        }
+        return buffer[offset];
+    }
+
+    /**
+     * Peeks the character the given distance ahead without advancing the scanner, peek(0) is the same as peek()
+     * @param distance
+     * @return character at the given distance
+     */
+    public char peek(int distance) throws IOException{
+        ensureOpen();
+        if(offset + distance >= length){
+            throw new EOFException();
         }
+        return buffer[offset + distance];
+    }
 
-        return peekedChar;
+    /**
+     * Returns true if there are characters left to read
+     * @return
+     */
+    public boolean hasNext(){
+        return offset < length;
+    }
+
+    /**
+     * Returns true if there are at least count characters left to read
+     * @param count
+     * @return
+     */
+    public boolean hasNext(int count){
+        return offset + count <= length;
+    }
+
+    /**
+     * Returns the characters between the two offsets, start inclusive, end exclusive
+     * @param start
+     * @param end
+     * @return text in the file
+     */
+    public String getText(int start, int end){
+        return new String(buffer, start, end - start);
+    }
+
+    /** returns the character at the given offset, no checks are made */
+    char charAt(int offset){
+        return buffer[offset];
+    }
+
+    /**
+     * Returns the offset of the next character to be returned, i.e. the number of characters read so far.
+     * @return Current offset
+     */
+    public int getOffset(){
+        return offset;
     }
 
     /**
@@ -85,7 +174,7 @@ public class Scanner {
      * @return Current Line
      */
     public int getLine(){
-        return line;
+        return getLine(offset);
     }
 
     /**
@@ -93,7 +182,26 @@ public class Scanner {
      * @return Current Column
      */
     public int getColumn(){
-        return column;
+        return getColumn(offset);
+    }
+
+    /**
+     * Returns the line (starting at 1) the scanner would be on after reading the given number of characters.
+     * @param offset
+     * @return Line at offset
+     */
+    public int getLine(int offset){
+        return lineIdxOf(offset) + 1;
+    }
+
+    /**
+     * Returns the column (starting at 0) the scanner would be on after reading the given number of characters.
+     * @param offset
+     * @return Column at offset
+     */
+    public int getColumn(int offset){
+        int lineIdx = lineIdxOf(offset);
+        return offset - lineStarts[lineIdx];
     }
 
     /**
@@ -101,6 +209,65 @@ public class Scanner {
      * @throws IOException
      */
     public void close() throws IOException{
-        input.close();
+        closed = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Scanner closed");
+    }
+
+    /** finds the index of the line containing the given offset in the line start table */
+    private int lineIdxOf(int offset){
+        int[] starts = lineStarts;
+        if(starts == null)
+            starts = buildLineStarts();
+        int count = lineCount;
+
+        // check the line we found last time and the one after it before searching
+        int hint = lastLineIdx;
+        if(offset >= starts[hint]){
+            if(hint + 1 == count || offset < starts[hint + 1]){
+                return hint;
+            }
+            if(hint + 2 == count || offset < starts[hint + 2]){
+                lastLineIdx = hint + 1;
+                return hint + 1;
+            }
+        }
+
+        int lo = 0;
+        int hi = count - 1;
+        while(lo < hi){
+            int mid = (lo + hi + 1) >>> 1;
+            if(starts[mid] <= offset){
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        lastLineIdx = lo;
+        return lo;
+    }
+
+    private synchronized int[] buildLineStarts(){
+        if(lineStarts != null)
+            return lineStarts;
+
+        int[] starts = new int[Math.max(16, length / 32)];
+        int count = 0;
+        starts[count++] = 0;
+        for(int i = 0; i < length; i++){
+            // \n should work for counting lines on both Unix and non-Unix systems
+            if(buffer[i] == '\n'){
+                if(count == starts.length){
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        lineCount = count;
+        lineStarts = starts;
+        return starts;
     }
-}
\ No newline at end of file
+}
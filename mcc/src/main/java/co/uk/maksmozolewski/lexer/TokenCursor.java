@@ -0,0 +1,47 @@
+package co.uk.maksmozolewski.lexer;
+
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+import co.uk.maksmozolewski.util.Position;
+
+/**
+ * A position in a sequence of tokens which only moves forward. Lets the parser look at tokens without
+ * them having to exist as objects. Once the EOF token is reached the cursor stays on it.
+ */
+public interface TokenCursor {
+
+    /**
+     * Returns the class of the token the given number of tokens after the current one, 0 is the current token
+     * @param distance
+     * @return
+     */
+    public TokenClass peekClass(int distance);
+
+    /**
+     * Moves on to the next token
+     */
+    public void advance();
+
+    /**
+     * Returns the index of the current token, counting from 0 at the start of the file
+     * @return
+     */
+    public int index();
+
+    /**
+     * Returns the data of the current token as Token.data would hold it
+     * @return
+     */
+    public String data();
+
+    /**
+     * Returns the intern pool id of the current token's data or TokenStream.NO_DATA if it has none
+     * @return
+     */
+    public int dataId();
+
+    /**
+     * Returns the position of the start of the current token
+     * @return
+     */
+    public Position position();
+}
@@ -0,0 +1,145 @@
+package co.uk.maksmozolewski.lexer;
+
+import java.util.Arrays;
+
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+import co.uk.maksmozolewski.util.Position;
+
+/**
+ * All the tokens of a file kept in parallel arrays rather than as Token objects.
+ * Each token is its class, where it starts in the file, how long it is and the id of its data in the intern pool.
+ * Positions are only worked out from the start offsets when asked for.
+ */
+public class TokenStream {
+
+    /** data id of tokens which carry no data */
+    public static final int NO_DATA = -1;
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private final Scanner scanner;
+    private final InternPool pool = new InternPool();
+
+    private byte[] classes = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] dataIds = new int[256];
+
+    private int size = 0;
+
+    TokenStream(Scanner scanner){
+        this.scanner = scanner;
+    }
+
+    void add(TokenClass tokenClass, int start, int end, int dataId){
+        if(size == classes.length){
+            int capacity = size * 2;
+            classes = Arrays.copyOf(classes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            dataIds = Arrays.copyOf(dataIds, capacity);
+        }
+        classes[size] = (byte)tokenClass.ordinal();
+        starts[size] = start;
+        lengths[size] = end - start;
+        dataIds[size] = dataId;
+        size++;
+    }
+
+    /**
+     * Returns the number of tokens in the stream, including the final EOF token
+     * @return
+     */
+    public int size(){
+        return size;
+    }
+
+    public TokenClass getTokenClass(int idx){
+        return CLASSES[classes[idx]];
+    }
+
+    public int getStart(int idx){
+        return starts[idx];
+    }
+
+    public int getLength(int idx){
+        return lengths[idx];
+    }
+
+    public int getDataId(int idx){
+        return dataIds[idx];
+    }
+
+    /**
+     * Returns the data of the token just like Token.data would hold it, "" if it has none
+     * @param idx
+     * @return
+     */
+    public String getData(int idx){
+        return dataIds[idx] == NO_DATA ? "" : pool.get(dataIds[idx]);
+    }
+
+    public Position getPosition(int idx){
+        return new Position(scanner.getLine(starts[idx]), scanner.getColumn(starts[idx]));
+    }
+
+    public InternPool getPool(){
+        return pool;
+    }
+
+    /**
+     * Returns a new cursor on the first token of the stream
+     * @return
+     */
+    public TokenCursor cursor(){
+        return new Cursor(0);
+    }
+
+    /**
+     * Returns a new cursor on the token with the given index
+     * @param idx
+     * @return
+     */
+    public TokenCursor cursor(int idx){
+        return new Cursor(idx);
+    }
+
+    private class Cursor implements TokenCursor {
+        private int idx;
+
+        Cursor(int idx){
+            this.idx = idx;
+        }
+
+        @Override
+        public TokenClass peekClass(int distance) {
+            return CLASSES[classes[Math.min(idx + distance, size - 1)]];
+        }
+
+        @Override
+        public void advance() {
+            if(idx < size - 1)
+                idx++;
+        }
+
+        @Override
+        public int index() {
+            return idx;
+        }
+
+        @Override
+        public String data() {
+            return getData(idx);
+        }
+
+        @Override
+        public int dataId() {
+            return dataIds[idx];
+        }
+
+        @Override
+        public Position position() {
+            return getPosition(idx);
+        }
+    }
+}
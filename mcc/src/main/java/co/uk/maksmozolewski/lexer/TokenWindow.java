@@ -0,0 +1,110 @@
+package co.uk.maksmozolewski.lexer;
+
+import java.io.IOException;
+
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+import co.uk.maksmozolewski.util.Position;
+
+/**
+ * A token cursor which tokenises on demand, keeping only the tokens from the current one up to the furthest one
+ * looked at. They are kept in a small circular buffer so looking ahead is a single index and nothing is allocated
+ * per token.
+ */
+public class TokenWindow implements TokenCursor {
+
+    /** how many tokens the window can hold, must be a power of two and more than the furthest lookahead */
+    public static final int CAPACITY = 8;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private final Tokeniser tokeniser;
+    private final Scanner scanner;
+    private final InternPool pool = new InternPool();
+
+    private final byte[] classes = new byte[CAPACITY];
+    private final int[] starts = new int[CAPACITY];
+    private final int[] dataIds = new int[CAPACITY];
+
+    /** index of the current token within the file, its slot is head & MASK */
+    private int head = 0;
+
+    /** number of tokens in the window, the current one included */
+    private int filled = 0;
+
+    /** true once the EOF token is in the window, nothing comes after it */
+    private boolean reachedEOF = false;
+
+    public TokenWindow(Tokeniser tokeniser){
+        this.tokeniser = tokeniser;
+        this.scanner = tokeniser.getScanner();
+        fill(0);
+    }
+
+    /** makes sure the token at the given distance is in the window, unless the file ends before it */
+    private void fill(int distance){
+        try {
+            while(filled <= distance && !reachedEOF){
+                int slot = (head + filled) & MASK;
+                TokenClass tokenClass = tokeniser.scanToken();
+                classes[slot] = (byte)tokenClass.ordinal();
+                starts[slot] = tokeniser.getTokenStart();
+                dataIds[slot] = tokeniser.internData(tokenClass, pool);
+                filled++;
+                reachedEOF = tokenClass == TokenClass.EOF;
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            // something went horribly wrong, abort
+            System.exit(-1);
+        }
+    }
+
+    @Override
+    public TokenClass peekClass(int distance) {
+        assert distance < CAPACITY;
+        if(distance >= filled){
+            fill(distance);
+            if(distance >= filled){
+                // anything past EOF is EOF
+                return TokenClass.EOF;
+            }
+        }
+        return CLASSES[classes[(head + distance) & MASK]];
+    }
+
+    @Override
+    public void advance() {
+        if(filled == 1 && reachedEOF){
+            // stay on EOF
+            return;
+        }
+        head++;
+        filled--;
+        if(filled == 0){
+            fill(0);
+        }
+    }
+
+    @Override
+    public int index() {
+        return head;
+    }
+
+    @Override
+    public String data() {
+        int dataId = dataIds[head & MASK];
+        return dataId == TokenStream.NO_DATA ? "" : pool.get(dataId);
+    }
+
+    @Override
+    public int dataId() {
+        return dataIds[head & MASK];
+    }
+
+    @Override
+    public Position position() {
+        int start = starts[head & MASK];
+        return new Position(scanner.getLine(start), scanner.getColumn(start));
+    }
+}
@@ -6,441 +6,230 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-
-import static java.util.Map.entry;
+import java.util.function.IntPredicate;
 
 /**
+ * Splits the source into tokens by running a single deterministic automaton over it. The automaton
+ * recognises every token class, its transition table is built once when the class is loaded.
+ * Whitespace and comments are skipped in a separate loop before the automaton is started on each token.
  * @author cdubach
  */
 public class Tokeniser {
 
-
-    public class UnrecognizedCharacterException extends Exception {
- 
-        /**
-         *
-         */
-        private static final long serialVersionUID = 1L;
-
-        public UnrecognizedCharacterException(final String message) {
-            super(message);
-        }
-        public UnrecognizedCharacterException(final String expected,final char encountered){
-            super("Expected: " + expected + ", but encountered: " + encountered);
-        }
-    }
     public int getErrorCount() {
         return this.error;
     }
 
     public Tokeniser(final Scanner scanner) throws EOFException, IOException {
         this.scanner = scanner;
-        //load up first character from the scanner
-        currChar = scanner.next();
     }
 
-
     /**
      * returns the next token in the stream.
      * @return
      */
     public Token nextToken() {
-        
-        clearTokenString();
-
-        Token result;
         try {
-             result = next();
-        } catch (final EOFException eof) {
-            // end of file, nothing to worry about, just return EOF token
-            return new Token(TokenClass.EOF,null, scanner.getLine(), scanner.getColumn());
-        } catch (final IOException ioe) { 
+            final TokenClass tokenClass = scanToken();
+            return new Token(tokenClass, tokenText(tokenClass), scanner.getLine(tokenStart), scanner.getColumn(tokenStart));
+        } catch (final IOException ioe) {
             ioe.printStackTrace();
             // something went horribly wrong, abort
             System.exit(-1);
             return null;
         }
-        //always pop in between tokens to avoid stupid errors
-        popCurrentTokenString();
+    }
 
-        if(!clearedFirstToken)
-            clearedFirstToken = true;
-        
-        return result;
+    /**
+     * Tokenises the rest of the input into a compact token stream, the last token in it is always EOF.
+     * No token objects are created, and identifiers and literals are interned.
+     * @return
+     */
+    public TokenStream tokenise() {
+        final TokenStream stream = new TokenStream(scanner);
+        try {
+            TokenClass tokenClass;
+            do {
+                tokenClass = scanToken();
+                stream.add(tokenClass, tokenStart, tokenEnd, internData(tokenClass, stream.getPool()));
+            } while(tokenClass != TokenClass.EOF);
+        } catch (final IOException ioe) {
+            ioe.printStackTrace();
+            // something went horribly wrong, abort
+            System.exit(-1);
+        }
+        return stream;
     }
 
     private final Scanner scanner;
 
     private int error = 0;
 
-    private char currChar;
-
-    private boolean reachedEOF = false;
-    
-    private boolean clearedFirstToken = false;
-    
-
-    /** holds the characters belonging to the current token */
-    private final StringBuilder tokenStringSoFar = new StringBuilder();
-
+    private long triviaSkipped = 0;
 
-    private Token next() throws IOException {
+    /** offsets of the first character of the last token scanned and of the one after it */
+    private int tokenStart;
+    private int tokenEnd;
 
-        final int line = scanner.getLine();
-        final int column = scanner.getColumn() - 1; // the scanner tells us that the current character is x chars in, we report that character's postition as x - 1
+    /** reused for undoing escape sequences in literals */
+    private final StringBuilder literalBuilder = new StringBuilder();
 
-        // skip white spaces
-        if (Character.isWhitespace(currChar)){
-            currChar = scanner.next();
-            return next();
-        }
-
-        try {
-            
-            // tokens identifiable by first character
-            switch(currChar){
-                case '#':
-                    expectFullString("#include");
-                    return new Token(TokenClass.INCLUDE,popCurrentTokenString(),line,column);
-                case '"':
-                    expectStringLiteral();
-                    return new Token(TokenClass.STRING_LITERAL,popCurrentTokenString(),line,column);
-                case '\'':
-                    expectCharLiteral();
-                    return new Token(TokenClass.CHAR_LITERAL,popCurrentTokenString(),line,column);
-            }
-
-            // operators
-            if(isOperatorStartChar(currChar)){
-                switch(currChar){
-                    case '&':
-                        expectFullString("&&");
-                        return new Token(TokenClass.AND,popCurrentTokenString(),line,column);
-                    case '|':
-                        expectFullString("||");
-                        return new Token(TokenClass.OR,popCurrentTokenString(),line,column);
-                    case '+':
-                        expectSingleChar('+');
-                        return new Token(TokenClass.PLUS,popCurrentTokenString(),line,column);
-                    case '-':
-                        expectSingleChar('-');
-                        return new Token(TokenClass.MINUS,popCurrentTokenString(),line,column);
-                    case '*':
-                        expectSingleChar('*');
-                        return new Token(TokenClass.ASTERIX,popCurrentTokenString(),line,column);
-                    case '/':
-                        Match rightMatch = expectLongestMatch(new ArrayList<Match>(Arrays.asList(
-                            new Match("/",TokenClass.DIV),
-                            new Match((s)->isACommentSoFar(s),null)
-                        )), "expected division or comment");
-
-                        if(rightMatch.getTokenClass() == null){
-                            // it's a comment, skip the whole token
-                            popCurrentTokenString();
-                            return nextToken();
-                        } else {
-                            // it's division
-                            return new Token(TokenClass.DIV,popCurrentTokenString(),line,column);
-                        }
-                    case '%':
-                        expectSingleChar('%');
-                        return new Token(TokenClass.REM,popCurrentTokenString(),line,column);
-                    case '.':
-                        expectSingleChar('.');
-                        return new Token(TokenClass.DOT,popCurrentTokenString(),line,column);
-                    case '!':
-                        expectFullString("!=");
-                        return new Token(TokenClass.NE,popCurrentTokenString(),line,column);
-                    case '=':
-                        int matched = expectEither("=", "==");
-                        if(matched == 0){
-                            return new Token(TokenClass.ASSIGN,popCurrentTokenString(),line,column);
-                        } else {
-                            return new Token(TokenClass.EQ,popCurrentTokenString(),line,column);
-                        }
-                    case '<':
-                        matched = expectEither("<","<=");
-                        if(matched == 0){
-                            return new Token(TokenClass.LT,popCurrentTokenString(),line,column);
-                        } else {
-                            return new Token(TokenClass.LE,popCurrentTokenString(),line,column);
-                        }
-                    case '>':
-                        matched = expectEither(">",">=");
-                        if(matched == 0){
-                            return new Token(TokenClass.GT,popCurrentTokenString(),line,column);
-                        } else {
-                            return new Token(TokenClass.GE,popCurrentTokenString(),line,column);
-                        }
-                    
-                }
-            }
-
-            // delimeters
-            if(isDelimeter(currChar)){
-                expectDelimeter();
-                String data = popCurrentTokenString();
-                return new Token(getDelimeterTokenClass((data).charAt(0)),data,line,column);
-            }
-
-            // int literals
-            if (Character.isDigit(currChar)){
-                expectIntLiteral();
-                return new Token(TokenClass.INT_LITERAL,popCurrentTokenString(),line,column);
+    /**
+     * Scans the next token, leaving its extent in tokenStart and tokenEnd
+     * @return the class of the token
+     */
+    TokenClass scanToken() throws IOException {
+        skipTrivia();
+
+        final int start = scanner.getOffset();
+        final int state = runAutomaton();
+        tokenStart = start;
+        tokenEnd = scanner.getOffset();
+
+        if(state == START){
+            // nothing matched, either we're done or no token can start with this character
+            if(!scanner.hasNext()){
+                return TokenClass.EOF;
             }
+            final char c = scanner.next();
+            tokenEnd = scanner.getOffset();
+            error(c, scanner.getLine(start), scanner.getColumn(start));
+            return TokenClass.INVALID;
+        }
 
-            // Identifiers or keywords, last since everything else is disjoint from this set
-            if(isIdentifierStartChar(currChar)){
-                final Match rightMatch = expectLongestMatch(new ArrayList<Match>(
-                    Arrays.asList(
-                    new Match("if",TokenClass.IF),
-                    new Match("else", TokenClass.ELSE),
-                    new Match("while",TokenClass.WHILE),
-                    new Match("return",TokenClass.RETURN),
-                    new Match("struct", TokenClass.STRUCT),
-                    new Match("sizeof",TokenClass.SIZEOF),
-                    new Match("int",TokenClass.INT),
-                    new Match("void",TokenClass.VOID),
-                    new Match("char",TokenClass.CHAR),
-                    new Match((s)->isValidIdentifier(s),TokenClass.IDENTIFIER))
-                )
-                , "Identifier or keyword");
-
-                return rightMatch.buildToken(popCurrentTokenString(), line, column);
+        final TokenClass tokenClass = ACCEPTS[state];
+        if(tokenClass == null){
+            // we stopped half way through a token
+            if(scanner.hasNext()){
+                error("Lexing error: unexpected character (" + scanner.peek() + ") in the middle of token", scanner.getLine(start), scanner.getColumn(start));
+            } else {
+                error("Lexing error: unexpected EOF in the middle of token", scanner.getLine(start), scanner.getColumn(start));
             }
-
-        } catch(EOFException e){
-            // next token will throw EOF at call to next(), meaning we get INVALID EOF at the end of the token list
-            error("Unexpected EOF in the middle of token",line,column);
-            return new Token(TokenClass.INVALID,popCurrentTokenString(), line, column);
+            return TokenClass.INVALID;
         }
-        catch (UnrecognizedCharacterException e) {
-            error(e,line,column);
-            return new Token(TokenClass.INVALID,popCurrentTokenString(),line,column);
-        } 
-        
 
-
-        // if we reach this point, it means we did not recognise a valid token
-        currChar = scanner.next();
-        error(currChar, line, column);
-        return new Token(TokenClass.INVALID,popCurrentTokenString(), line, column);
+        return tokenClass;
     }
 
     /**
-     * mechanism for working with multiple possible matches
+     * Returns the number of whitespace and comment characters skipped so far.
+     * @return
      */
-    private class Match{
-        private String match;
-        private Function<String,Boolean> funcMatch;
-        private final TokenClass tokenClass;
-
-        private int currPosition = 0;
-        private boolean isMatching = true;
-
-        public Match(final String match, final TokenClass matchTokenClass){
-            assert(match.length() > 0);
-            this.match = match;
-            this.tokenClass = matchTokenClass;
-        }
-
-        public Match(final Function<String,Boolean> match, final TokenClass matchTokenClass){
-            assert(match != null);
-            this.funcMatch = match;
-            this.tokenClass = matchTokenClass;
-        }
-        
-        public TokenClass getTokenClass(){
-            return tokenClass;
-        }
-
-        public boolean isWholeMatch(String string){
-            return funcMatch == null ?
-                    match.equals(string) :
-                    funcMatch.apply(string);
-        }
-        
-        public boolean isMatching(){
-            return isMatching;
-        }
-
-
-        public void progressChar(final char c){
-            // a successfull match is failed after progressing over its maximum length
-
-            if(!checkMatch(c)){
-                isMatching = false;
-            } 
-            currPosition++;
-            
-        } 
-
-        public Token buildToken(final String data,final int line,final int col){
-            return new Token(tokenClass,data,line,col);
-        }
+    public long getTriviaSkipped() {
+        return this.triviaSkipped;
+    }
 
-        private boolean checkMatch(final char c){
-            if(funcMatch == null){
-                if(currPosition > match.length() - 1){
-                    return false;
-                } else {
-                    return match.charAt(currPosition) == c;
+    /**
+     * Consumes any run of whitespace and comments in front of the next token.
+     */
+    private void skipTrivia() throws IOException {
+        final int start = scanner.getOffset();
+        while(scanner.hasNext()){
+            final char c = scanner.peek();
+            if(isWhitespace(c)){
+                scanner.next();
+            } else if(c == '/' && scanner.hasNext(2) && scanner.peek(1) == '/'){
+                // line comment, the new line is left for the whitespace branch
+                while(scanner.hasNext() && scanner.peek() != '\n'){
+                    scanner.next();
                 }
+            } else if(c == '/' && scanner.hasNext(2) && scanner.peek(1) == '*'){
+                skipBlockComment();
             } else {
-                return funcMatch.apply(tokenStringSoFar.toString() + c);
+                break;
             }
         }
-
-    }
-
-    /** list of reserved keywords which cannot be used as identifiers */
-    private final HashSet<String> keywords = new HashSet<String>(
-        Arrays.asList(
-            "int",
-            "void",
-            "char",
-            "if",
-            "else",
-            "while",
-            "return",
-            "struct",
-            "sizeof"
-        )
-    );
-
-    private final HashSet<Character> escapeSequenceEndings = new HashSet<Character>(
-        Arrays.asList('r','f','\'','"','t','b','n','\\','0')
-    );
-
-    private final Map<Character,Character> escapeEndingToEscapeCharacterMap = Map.ofEntries(
-        entry('r', '\r'),
-        entry('f','\f'),
-        entry('\'','\''),
-        entry('"','\"'),
-        entry('t','\t'),
-        entry('b','\b'),
-        entry('n','\n'),
-        entry('\\','\\'),
-        entry('0','\0')
-    );
-
-    private final HashSet<Character> delimeters = new HashSet<Character>(
-        Arrays.asList('{','}','(',')','[',']',';',',')
-    );
-
-    private final Map<Character,TokenClass> delimeterToTokenClassMap = Map.ofEntries(
-        entry('{',TokenClass.LBRA),
-        entry('}',TokenClass.RBRA),
-        entry('(',TokenClass.LPAR),
-        entry(')',TokenClass.RPAR),
-        entry('[',TokenClass.LSBR),
-        entry(']',TokenClass.RSBR),
-        entry(';',TokenClass.SC),
-        entry(',',TokenClass.COMMA)
-    );
-
-    private final HashSet<Character> operatorStartChars = new HashSet<Character>(
-        Arrays.asList('+','-','*','/','%','=','!','.','<','>','&','|')
-    );
-
-    
-    private boolean isKeyword(String s){
-        return keywords.contains(s);
+        triviaSkipped += scanner.getOffset() - start;
     }
 
-    private TokenClass getDelimeterTokenClass(final char c){
-        assert(delimeterToTokenClassMap.containsKey(c));
-        return delimeterToTokenClassMap.get(c);
-    }
-    private char getEscapeCharacterForEnding(final char c){
-        return escapeEndingToEscapeCharacterMap.get(c);
+    private void skipBlockComment() throws IOException {
+        final int start = scanner.getOffset();
+        scanner.next();
+        scanner.next();
+        while(scanner.hasNext()){
+            if(scanner.next() == '*' && scanner.hasNext() && scanner.peek() == '/'){
+                scanner.next();
+                return;
+            }
+        }
+        error("Lexing error: unexpected EOF in the middle of comment", scanner.getLine(start), scanner.getColumn(start));
     }
 
     /**
-     * 
-     * @param string
-     * @return true if the given string is a valid Identifier string
+     * Consumes characters for as long as the automaton has somewhere to go.
+     * Mini-c never needs to back off to a shorter match, so there is no need to remember the last accepting state.
+     * @return the state the automaton stopped in
      */
-    private boolean isValidIdentifier(final String string){
-        //TODO: make sure that keywords within identifiers dont get flagged as keywords
-        if(string.length() == 0) return false;
-
-        if(!isIdentifierStartChar(string.charAt(0))) return false;
-
-        if(isKeyword(string)) return false;
-
-        for(int i =1 ; i <string.length();i++){
-            final char c = string.charAt(i);
-            if(!isIdentifierInsideChar(c)) return false;
+    private int runAutomaton() throws IOException {
+        int state = START;
+        while(scanner.hasNext()){
+            final char c = scanner.peek();
+            final int nextState = TRANSITIONS[state * CLASS_COUNT + CHAR_CLASSES[c < OTHER ? c : OTHER]];
+            if(nextState == DEAD){
+                break;
+            }
+            scanner.next();
+            state = nextState;
+        }
+        return state;
+    }
+
+    /** the text of the last token as the Token constructor expects it, literals keep their quotes */
+    private String tokenText(final TokenClass tokenClass){
+        switch(tokenClass){
+            case IDENTIFIER:
+            case INT_LITERAL:
+                return scanner.getText(tokenStart, tokenEnd);
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                return undoEscapes(scanner.getText(tokenStart, tokenEnd));
+            default:
+                return "";
         }
-        return true;
-    }
-
-    private boolean isDelimeter(final char c){
-        return delimeters.contains(c);
-    }
-
-
-    private boolean isOperatorStartChar(final char c){
-        return operatorStartChars.contains(c);
     }
 
-    private boolean isIdentifierStartChar(final char c){
-        final int val = (int)c;
-        return ((val >= 65 && val <= 90) || (val >= 97 && val <= 122)) 
-            || c == '_';
+    public Scanner getScanner(){
+        return scanner;
     }
 
-    private boolean isIdentifierInsideChar(final char c){
-        return isIdentifierStartChar(c) || Character.isDigit(c);
+    /** offset of the first character of the last token scanned */
+    int getTokenStart(){
+        return tokenStart;
     }
 
-    private boolean isEscapeSequenceEnding(final char c){
-        return escapeSequenceEndings.contains((Character)c);
+    /** interns the data of the last token, literals lose their quotes just like in Token */
+    int internData(final TokenClass tokenClass, final InternPool pool){
+        switch(tokenClass){
+            case IDENTIFIER:
+            case INT_LITERAL:
+                return pool.intern(scanner, tokenStart, tokenEnd);
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                final String literal = undoEscapes(scanner.getText(tokenStart, tokenEnd));
+                return pool.intern(literal.substring(1, literal.length() - 1));
+            default:
+                return TokenStream.NO_DATA;
+        }
     }
 
+    /** replaces escape sequences in the literal with the characters they stand for, the quotes are kept */
+    private String undoEscapes(final String literal){
+        if(literal.indexOf('\\') == -1)
+            return literal;
 
- 
-
-    /**
-     * 
-     * @return true if the given string either is a comment, or has the valid starting characters to possibly be a comment
-     */
-    private boolean isACommentSoFar(String s){
-        // is it a comment
-        if(s.length() == 0) return false;
-
-        if(s.charAt(0) != '/') return false;
-        if(s.length() > 1){
-            boolean multiLineComment = s.charAt(1) == '*';
-            boolean singleLineComment = s.charAt(1) == '/';
-            
-            if(!multiLineComment && !singleLineComment) return false;
-            
-            if(multiLineComment){
-                // if the end of comment exists and is not the last thing in the string
-                int idxOfEndComment = s.indexOf("*/", 1);
-                if(idxOfEndComment != -1 && idxOfEndComment != s.length() - 2){
-                    return false;
-                } 
-
-            } else{
-                int idxOfEndLine = s.indexOf('\n', 1);
-                // if line break exists and is not the last thing in the string
-                if(idxOfEndLine != -1 && idxOfEndLine != s.length() - 1){
-                    return false;
-                }
+        literalBuilder.setLength(0);
+        for(int i = 0; i < literal.length(); i++){
+            char c = literal.charAt(i);
+            if(c == '\\'){
+                // the automaton only lets through valid escape sequences
+                c = ESCAPES[literal.charAt(++i)];
             }
-
+            literalBuilder.append(c);
         }
-
-        // if we have something of the form "/" or "//" or "//asd" or "/* asdasd" we accept it as a comment
-        // however things like "/* asdasd */ a" will be rejected
-        return true;
-
+        return literalBuilder.toString();
     }
 
     private void error(final char c, final int line, final int col) {
@@ -448,388 +237,230 @@ public class Tokeniser {
         error++;
     }
 
-    private void error(final UnrecognizedCharacterException e, final int line, final int col){
-        System.out.println("Lexing error: " + e.getMessage() + " at " + line + ":" + col);
-        error++;
-    }
-
     private void error(final String m, final int line, final int col){
-        System.err.println(m + " at "+":" + col);
+        System.out.println(m + " at " + line + ":" + col);
         error++;
     }
 
+    // // // AUTOMATON // // //
+
+    /** all non-ascii characters are treated alike, this is the index used for them */
+    private static final int OTHER = 128;
+
+    /** the state with no way out */
+    private static final int DEAD = 0;
+    private static final int START = 1;
+
+    /** character class of each ascii character, OTHER holds the class of everything else */
+    private static final byte[] CHAR_CLASSES = new byte[OTHER + 1];
+    private static final int CLASS_COUNT;
+
+    /** next state for every (state, character class) pair, indexed by state * CLASS_COUNT + class */
+    private static final int[] TRANSITIONS;
+
+    /** the token class recognised when the automaton stops in each state, null if it isn't accepting */
+    private static final TokenClass[] ACCEPTS;
+
+
+    /** the character each escape sequence ending stands for */
+    private static final char[] ESCAPES = new char[OTHER + 1];
+
+    static {
+        ESCAPES['r'] = '\r';
+        ESCAPES['f'] = '\f';
+        ESCAPES['\''] = '\'';
+        ESCAPES['"'] = '"';
+        ESCAPES['t'] = '\t';
+        ESCAPES['b'] = '\b';
+        ESCAPES['n'] = '\n';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['0'] = '\0';
+
+        final TableBuilder b = new TableBuilder();
+        final int dead = b.state(null);
+        final int start = b.state(null);
+        assert dead == DEAD && start == START;
+
+        // identifiers, keywords are a trie laid over the top of them
+        final int identifier = b.state(TokenClass.IDENTIFIER);
+        b.edges(start, Tokeniser::isIdentifierStartChar, identifier);
+        b.edges(identifier, Tokeniser::isIdentifierInsideChar, identifier);
+
+        final Map<String,TokenClass> keywords = Map.of(
+            "int", TokenClass.INT,
+            "void", TokenClass.VOID,
+            "char", TokenClass.CHAR,
+            "if", TokenClass.IF,
+            "else", TokenClass.ELSE,
+            "while", TokenClass.WHILE,
+            "return", TokenClass.RETURN,
+            "struct", TokenClass.STRUCT,
+            "sizeof", TokenClass.SIZEOF
+        );
+        for (Map.Entry<String,TokenClass> keyword : keywords.entrySet()) {
+            final String word = keyword.getKey();
+            int prev = start;
+            for(int i = 0; i < word.length(); i++){
+                final boolean last = i == word.length() - 1;
+                int next = b.target(prev, word.charAt(i));
+                if(next == identifier){
+                    // prefixes of keywords are still identifiers
+                    next = b.state(last ? keyword.getValue() : TokenClass.IDENTIFIER);
+                    b.edges(next, Tokeniser::isIdentifierInsideChar, identifier);
+                    b.edge(prev, word.charAt(i), next);
+                } else if(last){
+                    b.accept(next, keyword.getValue());
+                }
+                prev = next;
+            }
+        }
 
-    private void queueChar(final char symbol){
-        tokenStringSoFar.append(symbol);
-    }
+        // int literals
+        final int intLiteral = b.state(TokenClass.INT_LITERAL);
+        b.edges(start, Tokeniser::isDigit, intLiteral);
+        b.edges(intLiteral, Tokeniser::isDigit, intLiteral);
+
+        // delimeters and single character operators
+        final char[] singles = {'{','}','(',')','[',']',';',',','+','-','*','%','.'};
+        final TokenClass[] singleClasses = {
+            TokenClass.LBRA, TokenClass.RBRA, TokenClass.LPAR, TokenClass.RPAR, TokenClass.LSBR, TokenClass.RSBR, TokenClass.SC, TokenClass.COMMA,
+            TokenClass.PLUS, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.REM, TokenClass.DOT
+        };
+        for(int i = 0; i < singles.length; i++){
+            b.edge(start, singles[i], b.state(singleClasses[i]));
+        }
 
-    private void clearTokenString(){
-        tokenStringSoFar.setLength(0);
-    }
+        // operators which may be followed by a second character
+        b.edge(b.edgeTo(start, '=', TokenClass.ASSIGN), '=', b.state(TokenClass.EQ));
+        b.edge(b.edgeTo(start, '<', TokenClass.LT), '=', b.state(TokenClass.LE));
+        b.edge(b.edgeTo(start, '>', TokenClass.GT), '=', b.state(TokenClass.GE));
+        b.edge(b.edgeTo(start, '!', null), '=', b.state(TokenClass.NE));
+        b.edge(b.edgeTo(start, '&', null), '&', b.state(TokenClass.AND));
+        b.edge(b.edgeTo(start, '|', null), '|', b.state(TokenClass.OR));
+
+        // division, comments are dealt with before the automaton runs
+        b.edge(start, '/', b.state(TokenClass.DIV));
+
+        // string literals
+        final int string = b.edgeTo(start, '"', null);
+        final int stringEscape = b.state(null);
+        b.edges(string, c -> c != '"' && c != '\\', string);
+        b.edge(string, '\\', stringEscape);
+        b.edges(stringEscape, Tokeniser::isEscapeSequenceEnding, string);
+        b.edge(string, '"', b.state(TokenClass.STRING_LITERAL));
+
+        // char literals
+        final int charOpen = b.edgeTo(start, '\'', null);
+        final int charEscape = b.state(null);
+        final int charBody = b.state(null);
+        b.edges(charOpen, c -> c != '\\', charBody);
+        b.edge(charOpen, '\\', charEscape);
+        b.edges(charEscape, Tokeniser::isEscapeSequenceEnding, charBody);
+        b.edge(charBody, '\'', b.state(TokenClass.CHAR_LITERAL));
+
+        // include
+        final String include = "#include";
+        int prev = start;
+        for(int i = 0; i < include.length(); i++){
+            prev = b.edgeTo(prev, include.charAt(i), i == include.length() - 1 ? TokenClass.INCLUDE : null);
+        }
 
-    private String popCurrentTokenString(){
-        final String currTokenString = tokenStringSoFar.toString();
-        clearTokenString();
-        return currTokenString;
+        CLASS_COUNT = b.computeCharClasses(CHAR_CLASSES);
+        TRANSITIONS = b.buildTransitions(CHAR_CLASSES, CLASS_COUNT);
+        ACCEPTS = b.accepts.toArray(new TokenClass[0]);
     }
 
-    /**
-     * if the current next character matches the given symbol returns true and advances the scanner, otherwise returns true
-     * @param symbol
-     * @return true if symbol is the next character
-     * @throws IOException
-     */
-    private boolean tryAcceptChar(final char symbol) throws IOException,EOFException{
-        boolean acceptedChar = false;
+    // predicates over characters, OTHER stands in for any non-ascii character
 
-        if(currChar == symbol){
-            acceptedChar = true;
-            acceptChar(symbol);
-        }
+    private static boolean isWhitespace(final int c){
+        return c < OTHER && Character.isWhitespace(c);
+    }
 
-        return acceptedChar;
+    private static boolean isDigit(final int c){
+        return c >= '0' && c <= '9';
     }
 
-    /**
-     * Accepts any character and progresses the scanner
-     * @param symbol
-     * @throws IOException
-     * @throws EOFException
-     */
-    private void acceptChar(final char symbol) throws IOException,EOFException{
-        queueChar(symbol);
-        try {
-            currChar = scanner.next();
-        } catch (final EOFException e) {
-            if(reachedEOF){
-                throw e;
-            } else {// otherwise we expect not to use currChar again,
-                currChar = (char) 0;
-                reachedEOF = true;
-            }
-        }
+    private static boolean isIdentifierStartChar(final int c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
     }
 
+    private static boolean isIdentifierInsideChar(final int c){
+        return isIdentifierStartChar(c) || isDigit(c);
+    }
+
+    private static boolean isEscapeSequenceEnding(final int c){
+        return c < OTHER && ESCAPES[c] != 0 || c == '0';
+    }
 
     /**
-     * just progresses the scanner without queuing the character
-     * @throws IOException
+     * Builds the automaton with one column per ascii character (plus one for everything else),
+     * then merges characters which behave the same everywhere into classes.
      */
-    private void skipChar() throws IOException {
-        try {
-            currChar = scanner.next();
-        } catch (final EOFException e){
-            if(reachedEOF){
-                throw e;
-            } else {
-                currChar = (char) 0;
-                reachedEOF = true;
-            }
+    private static class TableBuilder {
+        final List<int[]> rows = new ArrayList<int[]>();
+        final List<TokenClass> accepts = new ArrayList<TokenClass>();
+
+        int state(final TokenClass accept){
+            rows.add(new int[OTHER + 1]);
+            accepts.add(accept);
+            return rows.size() - 1;
         }
-    }
-
 
-    private Match expectLongestMatch(final ArrayList<Match> possibleMatches, final String expectErrorMessage) throws EOFException, IOException,
-            UnrecognizedCharacterException {
-        // keep filtering through the matches untill we have only one or none matches left
-        int maxLoops = 100;
-        boolean foundMatch = false;
-        Match pickedMatch = null;
-        do{
-            // progress char always stays one behind the next character to be accepted
-            char currProgressChar = currChar;
-
-            // try out the curr char
-            Match firstMatch = null;
-            int matchesCount = 0;
-            for (Match match : possibleMatches) {
-                match.progressChar(currProgressChar);
-                if(match.isWholeMatch(tokenStringSoFar.toString() + currProgressChar)){
-                    if(firstMatch == null){
-                        firstMatch = match;
-                    }
-                    matchesCount++;
-                }
-            }
-
-            Match firstMatchNext = null;
-            int matchesCountNext = 0;
-
-            // we do not progress the character unless there are actual matches, then we only peek
-            if(matchesCount > 0){
-                acceptChar(currChar);
-                currProgressChar = currChar;
-
-                if(!reachedEOF) {
-                    // look at next char too
-
-                    for (Match match : possibleMatches) {
-                        match.progressChar(currProgressChar);
-                        if(match.isWholeMatch(tokenStringSoFar.toString() + currProgressChar)){
-                            if(firstMatchNext == null){
-                                firstMatchNext = match;
-                            }
-                            matchesCountNext++;
-                        }
-                    }
-                }
-            } else {
-                matchesCountNext = 0;
-            }
-
-            // don't progress the string unless there are more matches coming
-            if(matchesCountNext > 0)
-                acceptChar(currChar);
-            
-
-            // a match will be the longest and first one to be found
-
-            if(matchesCount == 0 && matchesCountNext == 0)
-                // if no matches yet, keep going, something has to match (or not :C, hence max loops)
-                continue;
-            else if(matchesCount > 0){
-                // if we found some matches in the current char
-                // check there's not something longer that matches
-                if(matchesCountNext > 0){
-                    // if we hit EOF, we use the longest match we found
-                    pickedMatch = firstMatchNext;
-                    continue;
-                } else {
-                    // we leave the loop with the only left over match
-                    pickedMatch = firstMatch;
-                    foundMatch = true;
-                }
-            } else {
-                // if no matches in the first round but picked up some in the next
-                // just keep going, need more info
-                continue;
-            }
-            
-        } while(!foundMatch && !reachedEOF && maxLoops-- > 0);
-
-        maxLoops = 100;
-        char currProgressChar = currChar;
-        while(pickedMatch.isWholeMatch(tokenStringSoFar.toString() + currProgressChar) && !reachedEOF && maxLoops-- > 0){
-            pickedMatch.progressChar(currChar);
-            // keep going with the longest match untill we either reach EOF or no longer matching or exceed the loop limit
-            if(pickedMatch.isMatching()){
-                acceptChar(currChar);
-            }
+        void accept(final int state, final TokenClass accept){
+            accepts.set(state, accept);
         }
-        // this might return null in bad combinations of queries, we return the best thing we find essentially
-        return pickedMatch;
 
+        int target(final int from, final char c){
+            return rows.get(from)[c];
         }
 
-    /**
-     * accepts: either of the given strings, with LL(1) (only one character
-     * lookahead). The longest matching string is matched first. In the cases where maximum lookahead is exceeded or EOF is reached t1 is given priority.
-     * advances the scanner to the
-     * length of the longest match.
-     * 
-     * @param t1
-     * @param t2
-     * @return 0 if t1 is matched, 1 if t2 is matched
-     * @throws UnrecognizedCharacterException
-     * @throws IOException
-     * @throws EOFException
-     */
-    private int expectEither(final String t1, final String t2) throws UnrecognizedCharacterException, EOFException, IOException {
-        // first see if both match the first character, 
-        // if not trivially expect the next character to the string matching the first one
-        if(t1.charAt(0) == currChar && t2.charAt(0) == currChar){
-
-            acceptChar(currChar);
-
-            // if we hit EOF, we attempt to match on just first character, this can only happen if one of the strings is 1 character long
-            if(reachedEOF){
-                if(t1.length() == 1)
-                    return 0;
-                else if (t2.length() == 1)
-                    return 1;
-                else 
-                    throw new UnrecognizedCharacterException("characters for: " + t1 +" or " + t2, currChar);
-            } else {
-
-                // give priority to longest match
-                final boolean t1MatchesSecondChar = t1.length() > 1 ? t1.charAt(1) == currChar : false;
-                final boolean t2MatchesSecondChar = t2.length() > 1 ? t2.charAt(1) == currChar : false;
-                if(t1MatchesSecondChar && t2MatchesSecondChar){
-                    // prioritize by length first then by order (t1 first)
-                    if(t1.length() >= t2.length()){
-                        expectFullString(t1.substring(1, t1.length()));
-                        return 0;
-                    }
-                    else if(t2.length() >= t1.length()){
-                        expectFullString(t2.substring(1, t2.length()));
-                        return 1;
-                    } else {
-                        assert false;
-                        // shouldnt be reached
-                        return -1;
-                    }
-                   
-                } else if (t1MatchesSecondChar){
-                    expectFullString(t1.substring(1, t1.length()));
-                    return 0;
-                } else if (t2MatchesSecondChar){
-                    expectFullString(t2.substring(1, t2.length()));
-                    return 1;
-                } else {
-                    // if none of them match second character, 
-                    // give it to t1 if it has only on char, or if it doesnt to t2 if it only has one char
-                    if(t1.length() == 1){
-                        return 0;
-                    } else if(t2.length() == 1){
-                        return 1;
-                    } else {
-                        throw new UnrecognizedCharacterException(t1.charAt(0) +" or " + t2.charAt(0), currChar);
-                    }
-                }
- 
-                
-            }
+        void edge(final int from, final char c, final int to){
+            rows.get(from)[c] = to;
         }
-        else if( t1.charAt(0) == currChar){
-            //match t1
-            expectFullString(t1);
-            return 0;
-
-        } else if (t2.charAt(0) == currChar){
-            // match t2
-            expectFullString(t2);
-            return 1;
-
-        } else {
-            throw new UnrecognizedCharacterException(t1.charAt(0) + " or " + t2.charAt(0), currChar);
-        }
-    }
 
-    /**
-     * accepts: the given string
-     * 
-     * @param s
-     * @throws UnrecognizedCharacterException
-     * @throws IOException
-     * @throws EOFException
-     */
-    private void expectFullString(String s) throws UnrecognizedCharacterException, EOFException, IOException {
-        while(s.length() != 0){
-            if(s.charAt(0) != currChar)
-                throw new UnrecognizedCharacterException(""+ s.charAt(0), currChar);
-            acceptChar(currChar);
-            s = s.substring(1, s.length());
+        /** adds an edge to a new state and returns it */
+        int edgeTo(final int from, final char c, final TokenClass accept){
+            final int to = state(accept);
+            edge(from, c, to);
+            return to;
         }
-    }
-
-    /**
-     * accepts: the given char
-     * 
-     * @param c
-     * @throws UnrecognizedCharacterException
-     * @throws IOException
-     * @throws EOFException
-     */
-    private void expectSingleChar(final char c) throws UnrecognizedCharacterException, EOFException, IOException {
-        if(c != currChar)
-            throw new UnrecognizedCharacterException(""+ c, currChar);
-        acceptChar(c);
-    }
-
-    
-    /**
-     * accepts: '{','}','(',')','[',']',';',','
-     * @throws UnrecognizedCharacterException
-     * @throws IOException
-     * @throws EOFException
-     */
-    private void expectDelimeter() throws UnrecognizedCharacterException, EOFException, IOException {
-        if (!isDelimeter(currChar))
-            throw new UnrecognizedCharacterException("A delimeter", currChar);
-        acceptChar(currChar);
-    }
-
-    /**
-     * accepts: \".*\"
-     * @throws IOException
-     * @throws UnrecognizedCharacterException
-     */
-    private void expectStringLiteral() throws IOException, UnrecognizedCharacterException{
-        if (!tryAcceptChar('"')) 
-            throw new UnrecognizedCharacterException("Start of string literal - \"",currChar);
 
-        while(true){
-
-            if (currChar == '"') break;
-
-            // check for escape characters
-            else if (currChar == '\\'){
-
-                final char nextChar = scanner.peek();
-                
-                if(isEscapeSequenceEnding(nextChar)){
-                    acceptChar(getEscapeCharacterForEnding(nextChar));
-                } else {
-                    throw new UnrecognizedCharacterException("A valid escape sequence:" + currChar);
+        void edges(final int from, final IntPredicate onChars, final int to){
+            final int[] row = rows.get(from);
+            for(int c = 0; c <= OTHER; c++){
+                if(onChars.test(c)){
+                    row[c] = to;
                 }
-                // skip to next char
-                skipChar();
-                
-            } else {
-                // accept any other character 
-                acceptChar(currChar);
             }
         }
 
-        if (!tryAcceptChar('"')) 
-            throw new UnrecognizedCharacterException("End of string literal - \"",currChar);
-    }
-
-    /**
-     * accepts: ('0'|...|'9')+
-     * @throws UnrecognizedCharacterException
-     * @throws EOFException
-     * @throws IOException
-     */
-    private void expectIntLiteral() throws UnrecognizedCharacterException, EOFException, IOException {
-        if(!Character.isDigit(currChar)) 
-            throw new UnrecognizedCharacterException("A digit [0-9]", currChar);
-        else{
-            acceptChar(currChar);
-            while(Character.isDigit(currChar)){
-                acceptChar(currChar);
+        /** fills in the class of each character and returns the number of classes */
+        int computeCharClasses(final byte[] classes){
+            final Map<String,Integer> classOfColumn = new HashMap<String,Integer>();
+            final int[] column = new int[rows.size()];
+            for(int c = 0; c <= OTHER; c++){
+                for(int s = 0; s < rows.size(); s++){
+                    column[s] = rows.get(s)[c];
+                }
+                final String key = Arrays.toString(column);
+                Integer cls = classOfColumn.get(key);
+                if(cls == null){
+                    cls = classOfColumn.size();
+                    classOfColumn.put(key, cls);
+                }
+                classes[c] = (byte)(int)cls;
             }
+            return classOfColumn.size();
         }
-    }
 
-    /**
-     * accepts: \'('a'|...|'z'|'A'|...|'Z'|'\t'|'\b'|'\n'|'\r'|'\f'|'\''|'\"'|'\\'|'\0'|'.'|','|'_'|...)\'
-     * @throws UnrecognizedCharacterException
-     * @throws EOFException
-     * @throws IOException
-     */
-    private void expectCharLiteral() throws UnrecognizedCharacterException, EOFException, IOException {
-        if(!tryAcceptChar('\'')) 
-            throw new UnrecognizedCharacterException("'\''", currChar);
-        // check for special characters
-        if(currChar == '\\'){
-            final char nextChar = scanner.peek();
-            if(isEscapeSequenceEnding(nextChar)){
-                acceptChar(getEscapeCharacterForEnding(nextChar));
-            } else {
-                throw new UnrecognizedCharacterException("A valid escape sequence, ", nextChar);
+        int[] buildTransitions(final byte[] classes, final int classCount){
+            final int[] table = new int[rows.size() * classCount];
+            for(int s = 0; s < rows.size(); s++){
+                for(int c = 0; c <= OTHER; c++){
+                    table[s * classCount + classes[c]] = rows.get(s)[c];
+                }
             }
-            skipChar();
-
-        } else {
-            // accept any character
-            //TODO: make sure parsing characters works like in C, only ASCI i belive
-            acceptChar(currChar);
+            return table;
         }
-
-        if(!tryAcceptChar('\''))
-            throw new UnrecognizedCharacterException("'\''",currChar);
     }
-
-
 }
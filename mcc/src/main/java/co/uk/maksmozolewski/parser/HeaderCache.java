@@ -0,0 +1,117 @@
+package co.uk.maksmozolewski.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.ast.Types;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.TokenStream;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+
+/**
+ * Keeps the tokens of every included file for the life of the process, so a header included by many files is only
+ * read and tokenised once. Entries are keyed by canonical path and checked against a hash of the file's contents,
+ * a header which changed is loaded again.
+ * Each program including a header gets declarations of its own parsed from the cached tokens, as the later passes
+ * write their results into the nodes.
+ */
+public final class HeaderCache {
+
+    /** the tokens of a header, and the files it includes */
+    static final class ParsedHeader {
+        final byte[] contentHash;
+        final File file;
+        final TokenStream tokens;
+        final List<File> includes;
+        /** lexing and parsing errors found in the header */
+        final int errorCount;
+
+        ParsedHeader(byte[] contentHash, File file, TokenStream tokens, List<File> includes, int errorCount){
+            this.contentHash = contentHash;
+            this.file = file;
+            this.tokens = tokens;
+            this.includes = includes;
+            this.errorCount = errorCount;
+        }
+
+        /**
+         * parses the declarations the header makes itself into new nodes, its errors were already printed when it was loaded
+         * @param types the types of the including program
+         * @return
+         */
+        Program declarations(Types types){
+            Parser parser = new Parser(tokens, file);
+            parser.types = types;
+            return parser.parseWithoutIncludesQuietly();
+        }
+    }
+
+    private static final ConcurrentHashMap<File, ParsedHeader> headers = new ConcurrentHashMap<File, ParsedHeader>();
+
+    private static final AtomicInteger loadCount = new AtomicInteger();
+
+    private HeaderCache(){
+    }
+
+    /**
+     * returns the header, loading it if it hasn't been loaded before or its contents changed since
+     * @param canonicalFile
+     * @return
+     * @throws IOException
+     */
+    static ParsedHeader get(File canonicalFile) throws IOException {
+        byte[] contentHash = hash(Files.readAllBytes(canonicalFile.toPath()));
+
+        ParsedHeader header = headers.get(canonicalFile);
+        if(header != null && Arrays.equals(header.contentHash, contentHash))
+            return header;
+
+        header = load(canonicalFile, contentHash);
+        headers.put(canonicalFile, header);
+        return header;
+    }
+
+    /**
+     * Returns the number of times a header was actually read and tokenised rather than found in the cache
+     * @return
+     */
+    public static int getLoadCount(){
+        return loadCount.get();
+    }
+
+    /**
+     * Forgets every parsed header
+     */
+    public static void clear(){
+        headers.clear();
+    }
+
+    private static ParsedHeader load(File file, byte[] contentHash) throws IOException {
+        loadCount.incrementAndGet();
+
+        Tokeniser tokeniser = new Tokeniser(new Scanner(file));
+        TokenStream tokens = tokeniser.tokenise();
+        // parsed once up front for the includes and to report the errors
+        Parser parser = new Parser(tokens, file);
+        parser.parseWithoutIncludes();
+
+        return new ParsedHeader(contentHash, file, tokens, parser.getIncludes(), tokeniser.getErrorCount() + parser.getErrorCount());
+    }
+
+    private static byte[] hash(byte[] content){
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
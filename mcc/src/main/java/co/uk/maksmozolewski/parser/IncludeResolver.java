@@ -0,0 +1,148 @@
+package co.uk.maksmozolewski.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import co.uk.maksmozolewski.ast.FunDecl;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.ast.StructTypeDecl;
+import co.uk.maksmozolewski.ast.Types;
+import co.uk.maksmozolewski.ast.VarDecl;
+
+/**
+ * Gathers the declarations of everything a file includes, directly or not.
+ * Each file is included at most once, and a file including itself through any chain of includes is an error.
+ * Files which can't be found are skipped with a warning.
+ */
+class IncludeResolver {
+
+    /** every file seen so far, canonical */
+    private final Set<File> included = new HashSet<File>();
+
+    /** the chain of files being included right now, canonical */
+    private final List<File> includeStack = new ArrayList<File>();
+
+    private final List<StructTypeDecl> structTypeDecls = new ArrayList<StructTypeDecl>();
+    private final List<VarDecl> varDecls = new ArrayList<VarDecl>();
+    private final List<FunDecl> funDecls = new ArrayList<FunDecl>();
+
+    private int errorCount = 0;
+
+    /** the types of the including program, which the headers' declarations are parsed with */
+    private final Types types;
+
+    IncludeResolver(File sourceFile, Types types){
+        this.types = types;
+        if(sourceFile != null){
+            File canonical = canonical(sourceFile);
+            if(canonical != null){
+                included.add(canonical);
+                includeStack.add(canonical);
+            }
+        }
+    }
+
+    int getErrorCount(){
+        return errorCount;
+    }
+
+    /**
+     * adds the declarations of each of the files and of everything they include
+     * @param files
+     */
+    void include(List<File> files){
+        for (File file : files) {
+            include(file);
+        }
+    }
+
+    private void include(File file){
+        File canonical = canonical(file);
+        if(canonical == null){
+            warning("could not resolve included file " + file);
+            return;
+        }
+
+        if(includeStack.contains(canonical)){
+            error("include cycle: " + cycleDescription(canonical));
+            return;
+        }
+
+        // already included somewhere else
+        if(!included.add(canonical)) return;
+
+        if(!canonical.isFile()){
+            warning("could not find included file " + file + ", skipping it");
+            return;
+        }
+
+        HeaderCache.ParsedHeader header;
+        try {
+            header = HeaderCache.get(canonical);
+        } catch (IOException e) {
+            warning("could not read included file " + file + " (" + e.getMessage() + "), skipping it");
+            return;
+        }
+        errorCount += header.errorCount;
+
+        // whatever the header includes comes before it
+        includeStack.add(canonical);
+        include(header.includes);
+        includeStack.remove(includeStack.size() - 1);
+
+        Program declarations = header.declarations(types);
+        structTypeDecls.addAll(declarations.structTypeDecls);
+        varDecls.addAll(declarations.varDecls);
+        funDecls.addAll(declarations.funDecls);
+    }
+
+    /**
+     * returns a program with the included declarations in front of the program's own
+     * @param program
+     * @return
+     */
+    Program merge(Program program){
+        List<StructTypeDecl> allStructTypeDecls = new ArrayList<StructTypeDecl>(structTypeDecls.size() + program.structTypeDecls.size());
+        allStructTypeDecls.addAll(structTypeDecls);
+        allStructTypeDecls.addAll(program.structTypeDecls);
+
+        List<VarDecl> allVarDecls = new ArrayList<VarDecl>(varDecls.size() + program.varDecls.size());
+        allVarDecls.addAll(varDecls);
+        allVarDecls.addAll(program.varDecls);
+
+        List<FunDecl> allFunDecls = new ArrayList<FunDecl>(funDecls.size() + program.funDecls.size());
+        allFunDecls.addAll(funDecls);
+        allFunDecls.addAll(program.funDecls);
+
+        return new Program(allStructTypeDecls, allVarDecls, allFunDecls, program.types);
+    }
+
+    private String cycleDescription(File repeated){
+        StringBuilder description = new StringBuilder();
+        for(int i = includeStack.indexOf(repeated); i < includeStack.size(); i++){
+            description.append(includeStack.get(i)).append(" -> ");
+        }
+        return description.append(repeated).toString();
+    }
+
+    private static File canonical(File file){
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void error(String message){
+        System.err.println("Parsing error: " + message + ".");
+        errorCount++;
+    }
+
+    private void warning(String message){
+        System.err.println("Parsing warning: " + message + ".");
+    }
+}
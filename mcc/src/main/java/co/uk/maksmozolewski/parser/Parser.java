@@ -1,14 +1,17 @@
 package co.uk.maksmozolewski.parser;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.function.Function;
-import java.util.function.Supplier;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import co.uk.maksmozolewski.ast.ArrayAccessExpr;
-import co.uk.maksmozolewski.ast.ArrayType;
 import co.uk.maksmozolewski.ast.Assign;
 import co.uk.maksmozolewski.ast.BaseType;
 import co.uk.maksmozolewski.ast.BinOp;
@@ -21,8 +24,8 @@ import co.uk.maksmozolewski.ast.FunCallExpr;
 import co.uk.maksmozolewski.ast.FunDecl;
 import co.uk.maksmozolewski.ast.If;
 import co.uk.maksmozolewski.ast.IntLiteral;
+import co.uk.maksmozolewski.ast.LazyBlock;
 import co.uk.maksmozolewski.ast.Op;
-import co.uk.maksmozolewski.ast.PointerType;
 import co.uk.maksmozolewski.ast.Program;
 import co.uk.maksmozolewski.ast.Return;
 import co.uk.maksmozolewski.ast.SizeOfExpr;
@@ -32,59 +35,185 @@ import co.uk.maksmozolewski.ast.StructType;
 import co.uk.maksmozolewski.ast.StructTypeDecl;
 import co.uk.maksmozolewski.ast.Type;
 import co.uk.maksmozolewski.ast.TypecastExpr;
+import co.uk.maksmozolewski.ast.Types;
 import co.uk.maksmozolewski.ast.ValueAtExpr;
 import co.uk.maksmozolewski.ast.VarDecl;
 import co.uk.maksmozolewski.ast.VarExpr;
 import co.uk.maksmozolewski.ast.While;
-import co.uk.maksmozolewski.lexer.Token;
+import co.uk.maksmozolewski.lexer.TokenCursor;
+import co.uk.maksmozolewski.lexer.TokenStream;
+import co.uk.maksmozolewski.lexer.TokenWindow;
 import co.uk.maksmozolewski.lexer.Tokeniser;
 import co.uk.maksmozolewski.lexer.Token.TokenClass;
 
 public class Parser {
     
-    Tokeniser tokeniser;
+    TokenCursor tokens;
 
-    /** the tokens we've read but not processed so far */
-    Queue<Token> buffer = new LinkedList<Token>();
-
-    Token currToken;
-    
     int errorCount;
 
-    Token lastErrorCausingToken;
+    /** index of the last token an error was reported on */
+    int lastErrorIndex = -1;
+
+    /** the file being parsed, includes are looked up relative to it. null if the tokens don't come from a file */
+    File sourceFile;
+
+    /** files included by the file being parsed, in order */
+    List<File> includes = new ArrayList<File>();
+
+    /** the whole token stream, only set when the parser was given one. The pool to parse function bodies on, only set when parsing in parallel */
+    TokenStream stream;
+    ForkJoinPool pool;
+
+    /** the types of the compilation, shared with the parsers of its function bodies and included files */
+    Types types = new Types();
+
+    /** whether function bodies are left to be parsed when first looked at, see parseLazily */
+    boolean lazyBodies;
+
+    /** indices of the braces around each function body the skim stepped over, keyed by the block standing in for it */
+    Map<Block,int[]> skimmedBodies;
+
+    /** errors held back to be printed in order once all the parallel parsing is done, null to print them straight away */
+    List<ReportedError> reportedErrors;
+
+    /** indices of the tokens errors were printed on when parsing lazily, so the fallback doesn't print them again */
+    Set<Integer> printedErrors;
+
+    /** errors in the included files, counted apart from the file's own when parsing lazily */
+    int includeErrorCount;
+
+    /** the function bodies of an in order parse keyed by the index of their opening brace, only set on such a parse */
+    Map<Integer,Block> bodiesByStart;
+
+    /** the in order parse a lazy parse falls back on once a body doesn't end where the skim found its closing brace */
+    private Parser inOrder;
+
+    private static class ReportedError {
+        final int tokenIndex;
+        final String message;
+
+        ReportedError(int tokenIndex, String message){
+            this.tokenIndex = tokenIndex;
+            this.message = message;
+        }
+    }
 
     public Parser(Tokeniser tokeniser){
-        this.tokeniser = tokeniser;
+        this(new TokenWindow(tokeniser), tokeniser.getScanner().getFile());
+    }
+
+    public Parser(TokenCursor tokens){
+        this(tokens, null);
+    }
+
+    public Parser(TokenCursor tokens, File sourceFile){
+        this.tokens = tokens;
+        this.sourceFile = sourceFile;
+    }
+
+    /**
+     * creates a parser over a whole token stream, which can also parse lazily
+     * @param stream
+     * @param sourceFile
+     */
+    public Parser(TokenStream stream, File sourceFile){
+        this(stream.cursor(), sourceFile);
+        this.stream = stream;
+    }
+
+    /**
+     * creates a parser which parses function bodies in parallel on the given pool, see parseInParallel
+     * @param stream
+     * @param sourceFile
+     * @param pool
+     */
+    public Parser(TokenStream stream, File sourceFile, ForkJoinPool pool){
+        this(stream, sourceFile);
+        this.pool = pool;
     }
 
+    /**
+     * parses the program, the declarations of all included files come before the file's own
+     * @return
+     */
     public Program parse(){
+        return withIncludes(pool == null ? parseProgram() : parseInParallel());
+    }
 
-        //set currToken to the first token
-        nextToken();
+    /**
+     * Parses the program like parse(), except each function body is only skimmed over and left as a LazyBlock,
+     * parsed the first time its declarations or statements are looked at. Looking at just the declarations
+     * then costs only as much as there are of them.
+     * Errors in a body are printed and added to the error count when it's parsed, so getErrorCount() only covers
+     * the bodies parsed so far. A body which doesn't end at its closing brace would have changed how the rest of the
+     * program parses, so once one is found the count is that of the whole program parsed in order, and bodies are
+     * taken from that parse. Only works on a parser given the whole token stream.
+     * @return
+     */
+    public Program parseLazily(){
+        if(stream == null)
+            throw new IllegalStateException("lazy parsing needs the whole token stream");
+
+        lazyBodies = true;
+        printedErrors = new HashSet<Integer>();
+        return withIncludes(parseProgram());
+    }
+
+    private Program withIncludes(Program program){
+        if(includes.isEmpty())
+            return program;
+
+        IncludeResolver resolver = new IncludeResolver(sourceFile, types);
+        resolver.include(includes);
+        includeErrorCount = resolver.getErrorCount();
+        errorCount += includeErrorCount;
+        return resolver.merge(program);
+    }
+
+    /**
+     * parses just this file, includes are only recorded in getIncludes()
+     * @return
+     */
+    Program parseWithoutIncludes(){
         return parseProgram();
     }
 
+    /**
+     * parses just this file like parseWithoutIncludes(), without printing its errors
+     * @return
+     */
+    Program parseWithoutIncludesQuietly(){
+        reportedErrors = new ArrayList<ReportedError>();
+        Program program = parseProgram();
+        reportedErrors = null;
+        return program;
+    }
+
+    List<File> getIncludes(){
+        return includes;
+    }
+
     public int getErrorCount(){
         return errorCount;
     }
 
     private void nextToken(){
-        if(buffer.isEmpty()){
-            currToken = tokeniser.nextToken();
-        } else {
-            currToken = buffer.poll();
-        }
+        tokens.advance();
+    }
 
+    private TokenClass currClass(){
+        return tokens.peekClass(0);
     }
 
     private void error(TokenClass... expected){
         
         // only write first error msg for each offending token, otherwise there will be an avalanche of errors
         // as the program tries to match multiple different rules
-        if(lastErrorCausingToken == currToken){
+        if(lastErrorIndex == tokens.index()){
             return;
         } else {
-            lastErrorCausingToken = currToken;
+            lastErrorIndex = tokens.index();
         }
 
         StringBuilder msg = new StringBuilder();
@@ -98,59 +227,48 @@ public class Parser {
             sep = ",";
         }
         msg.append("]. But encountered: ");
-        msg.append(currToken.toString());
+        msg.append(currClass().toString());
+        if(!tokens.data().equals("")){
+            msg.append('(').append(tokens.data()).append(')');
+        }
         msg.append(". At ");
-        msg.append(currToken.position);
+        msg.append(tokens.position());
         msg.append('.');
         
         errorCount++;
-        System.err.println(msg.toString());
+        if(printedErrors != null){
+            printedErrors.add(tokens.index());
+        }
+        if(reportedErrors != null){
+            reportedErrors.add(new ReportedError(tokens.index(), msg.toString()));
+        } else {
+            System.err.println(msg.toString());
+        }
     }
 
     /**
-     * populates the buffer with at least i tokens and returns the i'th token in the buffer (i starting at 1).
+     * returns the class of the i'th token after the current one (i starting at 1).
      * i >= 1
      * @param i
      * @return
      */
-    private Token lookAhead(int i){
+    private TokenClass lookAhead(int i){
         assert i >= 1;
-        Token ithToken = null;
-
-        // we try to fill the buffer up to the required capacity and at the same time capture
-        // the ith element without going through the buffer
-        while(buffer.size() <= i){
-            Token nextToken = tokeniser.nextToken();
-            buffer.add(nextToken);
-        }
-
-        assert buffer.size() >= i;
-
-        // if we havent captured the ith token (i.e. our buffer was already filled)
-        // then we go through it and search for the ith token
-        int cnt = 1;
-        for (Token token : buffer) {
-            if(cnt++ == i){
-                ithToken = token;
-                break;
-            }
-        }
-
-        assert ithToken != null;
-        return ithToken;
+        return tokens.peekClass(i);
     }
 
 
     /**
-     * returns a token corresponding to any of the given token classes if the next token is one of them or null otherwise
+     * consumes the next token if it's of any of the given token classes and returns its data, returns null otherwise
      * @param expected
-     * @return Token of one of the expected classes or null if next token is none of them.
+     * @return data of the token ("" if it has none) or null if next token is none of the expected classes.
      */
-    private Token expect(TokenClass... expected){
+    private String expect(TokenClass... expected){
+        TokenClass currClass = currClass();
         for (TokenClass expectedClass : expected) {
-            if(currToken.tokenClass == expectedClass){
-                Token output;
-                output = currToken;
+            if(currClass == expectedClass){
+                String output;
+                output = tokens.data();
                 nextToken();
                 return output;
             }
@@ -165,10 +283,11 @@ public class Parser {
      * @param expected
      */
     private boolean accept(TokenClass... expected){
+        TokenClass currClass = currClass();
         boolean result = false;
         int idx = 0;
         while(result == false && expected.length - 1 >= idx ){
-            result = currToken.tokenClass == expected[idx++];
+            result = currClass == expected[idx++];
         }
         return result;
     }
@@ -212,6 +331,164 @@ public class Parser {
             TokenClass.STRING_LITERAL);
     }
 
+    // // // PARALLEL PARSING // // //
+
+    /**
+     * Parses everything but function bodies in order, skimming over each body by matching braces.
+     * The bodies are then parsed on the pool, each by a parser of its own starting at the body's opening brace.
+     * A body parsed on its own ends up exactly like it would in order as long as its parser stops right after the
+     * closing brace the skim found, as no other parser state carries over. If any doesn't, the program is parsed
+     * again in order. Errors are held back and printed in token order, like they would be when parsing in order.
+     * @return
+     */
+    private Program parseInParallel(){
+        skimmedBodies = new IdentityHashMap<Block,int[]>();
+        reportedErrors = new ArrayList<ReportedError>();
+        Program skimmed = parseProgram();
+
+        List<FunDecl> funDecls = new ArrayList<FunDecl>(skimmed.funDecls.size());
+        List<ForkJoinTask<Parser>> bodyParsers = new ArrayList<ForkJoinTask<Parser>>();
+        for (FunDecl funDecl : skimmed.funDecls) {
+            int[] body = funDecl == null ? null : skimmedBodies.get(funDecl.block);
+            bodyParsers.add(body == null ? null : pool.submit(() -> parseBodyFrom(body[0])));
+        }
+
+        for(int i = 0; i < skimmed.funDecls.size(); i++){
+            FunDecl funDecl = skimmed.funDecls.get(i);
+            if(bodyParsers.get(i) == null){
+                funDecls.add(funDecl);
+                continue;
+            }
+
+            Parser bodyParser = bodyParsers.get(i).join();
+            int bodyEnd = skimmedBodies.get(funDecl.block)[1];
+            if(bodyParser.tokens.index() != bodyEnd + 1){
+                // went past the body or stopped short of it, so the rest of the program might not parse the same
+                return parseInOrder();
+            }
+
+            errorCount += bodyParser.errorCount;
+            reportedErrors.addAll(bodyParser.reportedErrors);
+            funDecls.add(new FunDecl(funDecl.funType, funDecl.name, funDecl.params, bodyParser.parsedBody));
+        }
+
+        // the sort is stable and errors within each parser are already in token order
+        reportedErrors.sort((a, b) -> Integer.compare(a.tokenIndex, b.tokenIndex));
+        for (ReportedError reportedError : reportedErrors) {
+            System.err.println(reportedError.message);
+        }
+        reportedErrors = null;
+        skimmedBodies = null;
+
+        return new Program(skimmed.structTypeDecls, skimmed.varDecls, funDecls, types);
+    }
+
+    /** the block parsed by a body parser */
+    private Block parsedBody;
+
+    private Parser parseBodyFrom(int bodyStart){
+        Parser bodyParser = new Parser(stream.cursor(bodyStart), sourceFile);
+        bodyParser.types = types;
+        bodyParser.reportedErrors = new ArrayList<ReportedError>();
+        bodyParser.parsedBody = bodyParser.parseBlock();
+        return bodyParser;
+    }
+
+    private Program parseInOrder(){
+        tokens = stream.cursor();
+        errorCount = 0;
+        lastErrorIndex = -1;
+        includes.clear();
+        skimmedBodies = null;
+        reportedErrors = null;
+        return parseProgram();
+    }
+
+    /**
+     * Parses a function body left by parseLazily, printing its errors straight away. Like the parallel parse,
+     * if the body doesn't end at the closing brace the skim found the rest of the program might not parse the same,
+     * so from then on the bodies and errors are those of the program parsed in order.
+     */
+    private Block parseLazyBody(int bodyStart, int bodyEnd){
+        Parser bodyParser = inOrder == null ? parseBodyFrom(bodyStart) : null;
+        synchronized(this){
+            if(inOrder == null && bodyParser.tokens.index() == bodyEnd + 1){
+                errorCount += bodyParser.errorCount;
+                for (ReportedError reportedError : bodyParser.reportedErrors) {
+                    printedErrors.add(reportedError.tokenIndex);
+                    System.err.println(reportedError.message);
+                }
+                return bodyParser.parsedBody;
+            }
+            return inOrderBody(bodyStart, bodyParser);
+        }
+    }
+
+    /** returns the body the in order parse found at the given brace, or the one parsed on its own if there's none */
+    private Block inOrderBody(int bodyStart, Parser bodyParser){
+        if(inOrder == null){
+            inOrder = new Parser(stream.cursor(), sourceFile);
+            inOrder.types = types;
+            inOrder.reportedErrors = new ArrayList<ReportedError>();
+            inOrder.bodiesByStart = new HashMap<Integer,Block>();
+            inOrder.parseProgram();
+
+            errorCount = includeErrorCount + inOrder.errorCount;
+            for (ReportedError reportedError : inOrder.reportedErrors) {
+                if(printedErrors.add(reportedError.tokenIndex))
+                    System.err.println(reportedError.message);
+            }
+        }
+
+        Block body = inOrder.bodiesByStart.get(bodyStart);
+        if(body == null)
+            body = bodyParser != null ? bodyParser.parsedBody : parseBodyFrom(bodyStart).parsedBody;
+        return body;
+    }
+
+    /**
+     * steps over a block, leaving a placeholder to be replaced once the block is parsed,
+     * or a lazy block when parsing lazily. Blocks whose braces don't match are parsed straight away
+     * @return
+     */
+    private Block skimBlock(){
+        int bodyStart = tokens.index();
+        int bodyEnd = currClass() == TokenClass.LBRA ? matchingBrace(bodyStart) : -1;
+        if(bodyEnd == -1){
+            return parseBlock();
+        }
+
+        while(tokens.index() <= bodyEnd){
+            nextToken();
+        }
+
+        if(lazyBodies){
+            return new LazyBlock(() -> parseLazyBody(bodyStart, bodyEnd));
+        }
+
+        Block placeholder = new Block(null, null);
+        skimmedBodies.put(placeholder, new int[]{bodyStart, bodyEnd});
+        return placeholder;
+    }
+
+    /** returns the index of the brace closing the one at the given index, or -1 if the file ends first */
+    private int matchingBrace(int openingIdx){
+        int depth = 0;
+        for(int i = openingIdx; i < stream.size(); i++){
+            switch(stream.getTokenClass(i)){
+                case LBRA:
+                    depth++;
+                    break;
+                case RBRA:
+                    if(--depth == 0) return i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return -1;
+    }
+
     // // // PARSING // // // 
 
     private Program parseProgram(){
@@ -222,31 +499,36 @@ public class Parser {
 
         expect(TokenClass.EOF);
 
-        return new Program(structTypeDecls, varDecls, funDecls);
+        return new Program(structTypeDecls, varDecls, funDecls, types);
     }
 
     private void parseIncludes(){
         //(include)*
-        if(accept(TokenClass.INCLUDE)){
+        while(accept(TokenClass.INCLUDE)){
             parseInclude();
-            parseIncludes();
         }
     }
 
     private void parseInclude(){
         expect(TokenClass.INCLUDE);
-        expect(TokenClass.STRING_LITERAL);
+
+        String path;
+        if((path = expect(TokenClass.STRING_LITERAL)) == null) return;
+
+        File includedFile = new File(path);
+        if(!includedFile.isAbsolute() && sourceFile != null){
+            includedFile = new File(sourceFile.getAbsoluteFile().getParentFile(), path);
+        }
+        includes.add(includedFile);
     }
 
     private List<StructTypeDecl> parseStructDecls(){
         List<StructTypeDecl> structTypeDecls = new ArrayList<StructTypeDecl>();
         // (structdecl)*
-        if(accept(TokenClass.STRUCT)){
+        while(accept(TokenClass.STRUCT)){
 
             StructTypeDecl newDecl;
             if((newDecl = parseStructDecl()) != null) structTypeDecls.add(newDecl);
-            
-            structTypeDecls.addAll(parseStructDecls());
         }
 
         return structTypeDecls;
@@ -274,23 +556,20 @@ public class Parser {
         // "struct" IDENT
         expect(TokenClass.STRUCT);
 
-        Token ident;
+        String ident;
         if((ident = expect(TokenClass.IDENTIFIER)) == null) return null;
 
-        return new StructType(ident.data);
+        return types.struct(ident);
     }
 
 
 
     private List<VarDecl> parseVarDecls(){
-        TokenClass TokenClassTwoAhead = lookAhead(2).tokenClass;
-        boolean notFuncDecl = TokenClassTwoAhead != TokenClass.LPAR;
-
         List<VarDecl> varDecls = new ArrayList<VarDecl>();
 
-        if(varDeclFirstHasCurrToken() && notFuncDecl){
+        // (vardecl)*, a type followed by an identifier and "(" starts a function declaration instead
+        while(varDeclFirstHasCurrToken() && lookAhead(2) != TokenClass.LPAR){
             varDecls.add(parseVarDecl());
-            varDecls.addAll(parseVarDecls());
         }
 
         return varDecls;
@@ -305,27 +584,27 @@ public class Parser {
         if((varTypeToken = parseType()) == null) return null;
 
         // IDENT
-        Token varIdentifierToken;
+        String varIdentifierToken;
         if((varIdentifierToken = expect(TokenClass.IDENTIFIER)) == null) return null;
 
         // (";" | normal var decl
         //    "[" INT_LITERAL "]" ";") array decl
-        switch(currToken.tokenClass){
+        switch(currClass()){
             case SC:
                 nextToken();
-                return new VarDecl(varTypeToken, varIdentifierToken.data);
+                return new VarDecl(varTypeToken, varIdentifierToken);
             case LSBR:
                 // for arrays we need a size
                 expect(TokenClass.LSBR);
 
-                Token arrayCountToken;
+                String arrayCountToken;
                 if((arrayCountToken = expect(TokenClass.INT_LITERAL)) == null) return null;
 
                 expect(TokenClass.RSBR);
                 expect(TokenClass.SC);
 
-                Type arrayType = new ArrayType(varTypeToken, Integer.parseInt(arrayCountToken.data));
-                return new VarDecl(arrayType, varIdentifierToken.data);
+                Type arrayType = types.array(varTypeToken, Integer.parseInt(arrayCountToken));
+                return new VarDecl(arrayType, varIdentifierToken);
             default:
                 error(TokenClass.SC,TokenClass.LSBR);
                 return null;
@@ -333,10 +612,10 @@ public class Parser {
     }
 
     private List<FunDecl> parseFunDecls(){
-        List<FunDecl> funDecls = new LinkedList<FunDecl>();
-        if(funcDeclFirstHasCurrToken()){
+        List<FunDecl> funDecls = new ArrayList<FunDecl>();
+        // (fundecl)*
+        while(funcDeclFirstHasCurrToken()){
             funDecls.add(parseFunDecl());
-            funDecls.addAll(parseFunDecls());
         }
 
         return funDecls;
@@ -347,7 +626,7 @@ public class Parser {
         Type funType;
         if((funType = parseType()) == null) return null;
 
-        Token funIdent;
+        String funIdent;
         if((funIdent = expect(TokenClass.IDENTIFIER)) == null) return null;
 
         expect(TokenClass.LPAR);
@@ -357,41 +636,43 @@ public class Parser {
         expect(TokenClass.RPAR);
         
         Block funBlock;
-        if((funBlock = parseBlock()) == null) return null;
+        if(skimmedBodies != null || lazyBodies){
+            if((funBlock = skimBlock()) == null) return null;
+        } else {
+            int bodyStart = tokens.index();
+            if((funBlock = parseBlock()) == null) return null;
+            if(bodiesByStart != null)
+                bodiesByStart.put(bodyStart, funBlock);
+        }
         
-        return new FunDecl(funType, funIdent.data, params, funBlock);
+        return new FunDecl(funType, funIdent, params, funBlock);
     }
 
     private List<VarDecl> parseParams(){
-        List<VarDecl> params = new LinkedList<VarDecl>();
+        List<VarDecl> params = new ArrayList<VarDecl>();
+        // [ type IDENT ("," type IDENT)* ]
         if(typeFirstHasCurrToken()){
             Type varType;
             if((varType = parseType()) == null) return null;
         
-            Token varIden;
+            String varIden;
             if((varIden = expect(TokenClass.IDENTIFIER)) == null) return null;
 
-            params.add(new VarDecl(varType, varIden.data));
-
-            params.addAll(parseParamsRec());
+            params.add(new VarDecl(varType, varIden));
+        } else {
+            return params;
         }
 
-        return params;
-    }
-
-    private List<VarDecl> parseParamsRec(){
-        List<VarDecl> params = new LinkedList<VarDecl>();
-
         while(accept(TokenClass.COMMA)){
             nextToken();
 
             Type varType;
             if((varType = parseType()) == null) return null;
         
-            Token varIden;
+            String varIden;
             if((varIden = expect(TokenClass.IDENTIFIER)) == null) return null;
 
-            params.add(new VarDecl(varType, varIden.data));
+            params.add(new VarDecl(varType, varIden));
         }
 
         return params;
@@ -407,16 +688,16 @@ public class Parser {
     }
 
     private List<Stmt> parseStmnts(){
-        List<Stmt> stmts = new LinkedList<Stmt>();
-        if(stmntFirstHasCurrToken()){
+        List<Stmt> stmts = new ArrayList<Stmt>();
+        // (stmt)*
+        while(stmntFirstHasCurrToken()){
             stmts.add(parseStmnt());
-            stmts.addAll(parseStmnts());
         }
         return stmts;
     }
 
     private Stmt parseStmnt(){
-        switch(currToken.tokenClass){
+        switch(currClass()){
             case LBRA:
                 return parseBlock();
             case WHILE:
@@ -471,7 +752,7 @@ public class Parser {
                 Expr lhs;
                 if((lhs = parseExp()) == null) return null;
 
-                switch(currToken.tokenClass){
+                switch(currClass()){
                     case ASSIGN:
                         nextToken();
                         
@@ -530,128 +811,58 @@ public class Parser {
     }
 
     /**
-     * helper function for binary ops
-     * @param prefixExpr
-     * @param postfixExpr
-     * @param opTokens
-     * @return
+     * how tightly each binary operator binds its operands, 0 for tokens which aren't binary operators.
+     * Operators on the same level are left associative.
      */
-    private Expr binaryOpRecFunc(final Expr lhs,Supplier<Expr> prefixExpr, Function<Expr,Expr> postfixExpr,TokenClass...opTokens){
-        // binaryOpRecFunc = ["Op" prefixExpr binaryOpRecFunc]
-        if(accept(opTokens)){
-            TokenClass firstOpTokenClass= currToken.tokenClass;
-            nextToken();
-            
-            Expr rhs;
-            if((rhs = prefixExpr.get()) == null) return null;
-
-            // we check if there is more tail operators
-            if(accept(opTokens)){
-                Expr secondExpr;
-                // if so we pass new expr as lhs deeper
-                if((secondExpr = postfixExpr.apply(new BinOp(lhs,opTokenToASTOp(firstOpTokenClass),rhs))) == null) return null;
-                else
-                    return secondExpr;
-    
-            } else {
-                // if no tail just end the recursion
-                return new BinOp(lhs,opTokenToASTOp(firstOpTokenClass),rhs);
-            }
-
-        
-            
-        }
-        
-        // no operator found
-        return null;
-    }
-
-    private Expr binaryOpFunc(Supplier<Expr> prefixExpr, Function<Expr,Expr> postfixExpr,TokenClass...opTokens){
-        // binaryop = prefixExpr binaryOpRecFunc
-        Expr lhs;
-        if(( lhs = prefixExpr.get()) == null) return null;
-        
-        TokenClass opToken = currToken.tokenClass;
-
-        // if we dont find a bin op sign, we just return lhs, this is ok
-        if(!accept(opTokens)) return lhs;
-        nextToken();
-
-        Expr rhs;
-        // we then parse the prefix to the next op as the rhs to this bin op, for left associativity of all bin operators
-        if((rhs = prefixExpr.get()) == null){
-            // shouldn't happen, we should always have a rhs to an op
-            return null;
-        } else {
-            // a binary op
-            Expr tail;
-            // check we have a tail of operators ( another OP ) if so we pass this new exp as the lhs itself
-            if(accept(opTokens)){
-                if((tail = postfixExpr.apply(new BinOp(lhs,opTokenToASTOp(opToken),rhs))) == null) return null;
-                else
-                    // we create a bin op and pass it on as the lhs to the recursion
-                    return tail;
-            } else {
-                // otherwise just return self
-                return new BinOp(lhs,opTokenToASTOp(opToken),rhs);
-            }
-           
-        }
+    private static final int[] BINDING_POWER = new int[TokenClass.values().length];
+
+    static {
+        BINDING_POWER[TokenClass.OR.ordinal()] = 1;
+        BINDING_POWER[TokenClass.AND.ordinal()] = 2;
+        BINDING_POWER[TokenClass.EQ.ordinal()] = 3;
+        BINDING_POWER[TokenClass.NE.ordinal()] = 3;
+        BINDING_POWER[TokenClass.LT.ordinal()] = 4;
+        BINDING_POWER[TokenClass.LE.ordinal()] = 4;
+        BINDING_POWER[TokenClass.GT.ordinal()] = 4;
+        BINDING_POWER[TokenClass.GE.ordinal()] = 4;
+        BINDING_POWER[TokenClass.PLUS.ordinal()] = 5;
+        BINDING_POWER[TokenClass.MINUS.ordinal()] = 5;
+        BINDING_POWER[TokenClass.ASTERIX.ordinal()] = 6;
+        BINDING_POWER[TokenClass.DIV.ordinal()] = 6;
+        BINDING_POWER[TokenClass.REM.ordinal()] = 6;
     }
 
     private Expr parseExp(){
-        return parseOr();
-    }
-
-    private Expr parseOr(){
-        return binaryOpFunc(()->parseAnd(),(l)-> parseOrRec(l), TokenClass.OR);
-    }
-    private Expr parseOrRec(final Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseAnd(), (l)->parseOrRec(l), TokenClass.OR);
-    }
-
-    private Expr parseAnd(){
-        return binaryOpFunc(()->parseRelEq(), (l)->parseAndRec(l), TokenClass.AND);
-    }
-    private Expr parseAndRec(Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseRelEq(), (l)->parseAndRec(l), TokenClass.AND);
-    }
-    
-    
-    private Expr parseRelEq(){
-        return binaryOpFunc(()->parseRelComp(), (l)->parseRelEqRec(l), TokenClass.EQ,TokenClass.NE);
-    }
-    private Expr parseRelEqRec(Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseRelComp(), (l)->parseRelEqRec(l), TokenClass.EQ,TokenClass.NE);
-    }
-
-
-    private Expr parseRelComp(){
-        return binaryOpFunc(()->parseSummative(), (l)->parseRelCompRec(l), TokenClass.LT,TokenClass.LE,TokenClass.GT,TokenClass.GE);
-    }
-    private Expr parseRelCompRec(Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseSummative(), (l)->parseRelCompRec(l), TokenClass.LT,TokenClass.LE,TokenClass.GT,TokenClass.GE);
+        return parseBinaryOps(1);
     }
 
+    /**
+     * parses a chain of binary operations, stopping at the first operator which binds less tightly than minPower.
+     * A chain of operators on the same level is consumed in a loop, so recursion only goes as deep as the number of levels.
+     * @param minPower
+     * @return
+     */
+    private Expr parseBinaryOps(int minPower){
+        Expr lhs;
+        if((lhs = parseUnarySecondary()) == null) return null;
 
-    private Expr parseSummative(){
-        return binaryOpFunc(()->parseMulti(), (l)->parseSummativeRec(l), TokenClass.PLUS,TokenClass.MINUS);
-    }
-    private Expr parseSummativeRec(Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseMulti(), (l)->parseSummativeRec(l), TokenClass.PLUS,TokenClass.MINUS);
-    }
+        while(true){
+            TokenClass opToken = currClass();
+            int power = BINDING_POWER[opToken.ordinal()];
+            if(power == 0 || power < minPower) return lhs;
+            nextToken();
 
+            Expr rhs;
+            // only operators binding tighter may go in the rhs, which makes everything left associative
+            if((rhs = parseBinaryOps(power + 1)) == null) return null;
 
-    private Expr parseMulti(){
-        return binaryOpFunc(()->parseUnarySecondary(), (l)->parseMultiRec(l), TokenClass.ASTERIX,TokenClass.DIV,TokenClass.REM);
-    }
-    private Expr parseMultiRec(Expr lhs){
-        return binaryOpRecFunc(lhs,()->parseUnarySecondary(), (l)->parseMultiRec(l), TokenClass.ASTERIX,TokenClass.DIV,TokenClass.REM);
+            lhs = new BinOp(lhs, opTokenToASTOp(opToken), rhs);
+        }
     }
 
     private Expr parseUnarySecondary(){
 
-        switch(currToken.tokenClass){
+        switch(currClass()){
             case SIZEOF:
                 return parseSizeOf();
             case ASTERIX:
@@ -660,7 +871,7 @@ public class Parser {
                 return parseNegation();
             default:
                 // either ( type ) or unaryPrimary
-                TokenClass tokenAhead = lookAhead(1).tokenClass;
+                TokenClass tokenAhead = lookAhead(1);
                 if(tokenAhead == TokenClass.INT || 
                     tokenAhead == TokenClass.CHAR || 
                     tokenAhead == TokenClass.STRUCT || 
@@ -678,10 +889,10 @@ public class Parser {
 
 
         // TERMINALEXPR or FUNCALL
-        Token nxtToken = lookAhead(1);
+        TokenClass nxtClass = lookAhead(1);
 
 
-        if(nxtToken.tokenClass == TokenClass.DOT || nxtToken.tokenClass == TokenClass.LSBR){
+        if(nxtClass == TokenClass.DOT || nxtClass == TokenClass.LSBR){
             return parsePostExpr();
         } else {
             // just a terminal expr or function call
@@ -705,10 +916,10 @@ public class Parser {
     private Expr parsePostExprRec(Expr lhs){
         if(accept(TokenClass.DOT)){
             nextToken();
-            Token ident;
+            String ident;
             if((ident = expect(TokenClass.IDENTIFIER)) == null) return null;
 
-            Expr fieldAccess = new FieldAccessExpr(lhs, ident.data);
+            Expr fieldAccess = new FieldAccessExpr(lhs, ident);
             if(accept(TokenClass.DOT,TokenClass.LSBR)){
                 return parsePostExprRec(fieldAccess);
             } else {
@@ -732,15 +943,15 @@ public class Parser {
     }
 
     private Expr parseTerminalExp(){
-        switch(currToken.tokenClass){
+        switch(currClass()){
             case IDENTIFIER:
                 // IDENT or funcall
-                if(lookAhead(1).tokenClass == TokenClass.LPAR){
+                if(lookAhead(1) == TokenClass.LPAR){
                     return parseFunCall();
                 } else {
-                    Token identifier = currToken;
+                    String identifier = tokens.data();
                     nextToken();
-                    return new VarExpr(identifier.data);
+                    return new VarExpr(identifier);
                 }
             case LPAR:
                 // "(" expr ")"
@@ -754,23 +965,23 @@ public class Parser {
                 return insideExpr;
 
             case INT_LITERAL:
-                Token intLiteral = currToken;
+                String intLiteral = tokens.data();
                 nextToken();
-                return new IntLiteral(Integer.parseInt(intLiteral.data));
+                return new IntLiteral(Integer.parseInt(intLiteral));
 
             case CHAR_LITERAL:
-                Token charLiteral = currToken;
+                String charLiteral = tokens.data();
 
-                assert charLiteral.data.length() == 1;
+                assert charLiteral.length() == 1;
                 
                 nextToken();
-                return new ChrLiteral((char)charLiteral.data.charAt(0));
+                return new ChrLiteral((char)charLiteral.charAt(0));
 
             case STRING_LITERAL:
-                Token strLiteral = currToken;
+                String strLiteral = tokens.data();
                 nextToken();
 
-                return new StrLiteral(strLiteral.data);
+                return new StrLiteral(strLiteral);
 
             default:
                 // something's not right in the code if we reach here
@@ -783,29 +994,25 @@ public class Parser {
 
     private Expr parseFunCall(){
         // IDENT "(" [exp funcallargs] ")"
-        Token ident;
+        String ident;
         if((ident = expect(TokenClass.IDENTIFIER)) == null) return null;
 
         expect(TokenClass.LPAR);
 
-        List<Expr> args = new LinkedList<Expr>();
+        List<Expr> args = new ArrayList<Expr>();
         if(expFirstHasCurrToken()){
             args.add(parseExp());
-            args.addAll(parseFunCallArgs());
+
+            // ("," exp)*
+            while(accept(TokenClass.COMMA)){
+                nextToken();
+                args.add(parseExp());
+            }
         }
 
         expect(TokenClass.RPAR);
 
-        return new FunCallExpr(ident.data,args);
-    }
-
-    private List<Expr> parseFunCallArgs(){
-        List<Expr> args = new LinkedList<Expr>();
-        while(accept(TokenClass.COMMA)){
-            args.add(parseExp());
-        }
-
-        return args;
+        return new FunCallExpr(ident,args);
     }
 
     private Expr parseSizeOf(){
@@ -857,7 +1064,7 @@ public class Parser {
         Type returnType = null;
         // decide base type
 
-        switch(currToken.tokenClass){
+        switch(currClass()){
             case INT:
                 returnType = BaseType.INT;
                 nextToken();
@@ -884,7 +1091,7 @@ public class Parser {
         
         // ['*']
         if(accept(TokenClass.ASTERIX)){
-            returnType = new PointerType(returnType);
+            returnType = types.pointer(returnType);
             nextToken();
         }
 
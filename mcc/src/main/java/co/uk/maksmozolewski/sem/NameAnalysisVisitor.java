@@ -179,14 +179,12 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 
 	@Override
 	public Void visitStructType(StructType st) {
-		// check struct type declaration exists;
+		// check struct type declaration exists, the type already knows its declaration from the parser
 		Symbol s = currentScope.lookup(st.structTypeIdentifier);
 		if(s == null){
-			error("Struct type was not declared: " + s.name + ".");
+			error("Struct type was not declared: " + st.structTypeIdentifier + ".");
 		} else if  (!s.isStruct()){
 			error("Struct type was not declared: " + s.name + ", The same identifier is used in another variable or function declaration.");
-		} else {
-			st.dec = ((StructTypeSymbol)s).std;
 		}
 		
 		return null;
@@ -9,10 +9,12 @@ import co.uk.maksmozolewski.gen.ReturnMatcher;
 
 public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
-
+	/** the types of the program being checked */
+	private Types types;
 
 	@Override
 	public Type visitProgram(Program p) {
+		types = p.types;
 
 		// include stlib in type check (crude but it works)
 		List<FunDecl> funDecls = new LinkedList<FunDecl>(Main.stlib);
@@ -95,7 +97,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 	@Override
 	public Type visitStrLiteral(StrLiteral sl) {
 		// strings are char arrays with an implicit null terminator at the end
-		return sl.type = new ArrayType(BaseType.CHAR,sl.val.length() + 1);
+		return sl.type = types.array(BaseType.CHAR,sl.val.length() + 1);
 	}
 
 	@Override
@@ -276,10 +278,10 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 			return typecastExpr.type = typecastExpr.newType;
 		// array to ptr1
 		} else if (expType.isArrayType() && typecastExpr.newType.isPointerType()) {
-			return typecastExpr.type = new PointerType(((ArrayType)expType).innerType);
+			return typecastExpr.type = types.pointer(((ArrayType)expType).innerType);
 		// ptr to ptr
 		} else if (expType.isPointerType() && typecastExpr.newType.isPointerType()){
-			return typecastExpr.type = new PointerType(((PointerType)typecastExpr.newType).pointedToType);
+			return typecastExpr.type = types.pointer(((PointerType)typecastExpr.newType).pointedToType);
 		} else if (expType.equals(typecastExpr.newType)){
 			return expType;
 		} else {
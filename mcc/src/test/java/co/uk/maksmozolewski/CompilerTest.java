@@ -3,8 +3,10 @@ package co.uk.maksmozolewski;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -18,6 +20,8 @@ import org.junit.jupiter.api.io.TempDir;
 import co.uk.maksmozolewski.ast.ASTNode;
 import co.uk.maksmozolewski.ast.ASTPrinter;
 import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.gen.CodeGenerator;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
 import co.uk.maksmozolewski.lexer.Scanner;
 import co.uk.maksmozolewski.lexer.Token;
 import co.uk.maksmozolewski.lexer.Tokeniser;
@@ -29,6 +33,9 @@ import co.uk.maksmozolewski.semanticAnalysisTests.TypeAnalysisTest;
 
 public class CompilerTest {
 
+    /** the simulator the generated code is run on, tests running code are skipped without it */
+    private static final File MARS = new File("../Mars4_5.jar");
+
     protected Tokeniser testTokeniser;
     protected Scanner testScanner;
     protected Parser testParser;
@@ -133,5 +140,55 @@ public class CompilerTest {
         assertEquals(count,typeCheck.getErrorCount());
     }
 
+    /**
+     * parses and analyses the program, which has to be free of errors
+     */
+    protected Program analysed(String program) throws FileNotFoundException, IOException {
+        setupParser(program);
+        Program p = testParser.parse();
+        assertNoParserErrors();
+        assertEquals(0, testAnalyser.analyze(p), "Expected 0 semantic errors");
+        return p;
+    }
+
+    /**
+     * returns the assembly the last program run was compiled to
+     */
+    protected String asm() throws IOException {
+        return Files.readString(tempFile.resolveSibling("testFile.asm"));
+    }
+
+    /**
+     * compiles the program and runs it in MARS, returning what it printed
+     */
+    protected String runProgram(String program) throws IOException, InterruptedException {
+        return runProgram(program, RegisterAllocator.Strategy.LINEAR_SCAN);
+    }
+
+    /**
+     * compiles the program allocating registers the given way and runs it in MARS, returning what it printed
+     */
+    protected String runProgram(String program, RegisterAllocator.Strategy allocation) throws IOException, InterruptedException {
+        assumeTrue(MARS.exists(), "MARS is needed to run generated code");
+
+        return runProgram(analysed(program), allocation);
+    }
+
+    /**
+     * generates code for the analysed program and runs it in MARS, returning what it printed
+     */
+    protected String runProgram(Program p, RegisterAllocator.Strategy allocation) throws IOException, InterruptedException {
+        assumeTrue(MARS.exists(), "MARS is needed to run generated code");
+
+        File asm = tempFile.resolveSibling("testFile.asm").toFile();
+        new CodeGenerator(asm, allocation).emitProgram(p);
+
+        Process mars = new ProcessBuilder("java", "-jar", MARS.getPath(), "nc", "me", "1000000", asm.getPath())
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        String output = new String(mars.getInputStream().readAllBytes());
+        assertEquals(0, mars.waitFor(), "MARS failed: " + output);
+        return output;
+    }
 
-}
\ No newline at end of file
+}
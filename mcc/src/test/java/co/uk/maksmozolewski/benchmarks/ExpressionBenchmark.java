@@ -0,0 +1,66 @@
+package co.uk.maksmozolewski.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.TokenStream;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+
+/**
+ * Times the parser on expression heavy code, tokenised beforehand so only the parser is measured.
+ * Not a test, run it with make bench BENCH=ExpressionBenchmark.
+ */
+public class ExpressionBenchmark {
+
+    private static final int WARMUP_RUNS = 10;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws IOException {
+        File source = File.createTempFile("expressionBenchmark", ".c");
+        source.deleteOnExit();
+        Files.writeString(source.toPath(), generateProgram());
+
+        TokenStream stream = new Tokeniser(new Scanner(source)).tokenise();
+        for(int i = 0; i < WARMUP_RUNS; i++){
+            new Parser(stream.cursor()).parse();
+        }
+
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < RUNS; i++){
+            long start = System.nanoTime();
+            Parser parser = new Parser(stream.cursor());
+            parser.parse();
+            best = Math.min(best, System.nanoTime() - start);
+
+            if(parser.getErrorCount() != 0)
+                throw new IllegalStateException("benchmark program did not parse");
+        }
+        System.out.printf("expressions (%dKB, %d tokens) best of %d runs: %.2f ms%n",
+            source.length() / 1024, stream.size(), RUNS, best / 1e6);
+    }
+
+    private static String generateProgram(){
+        StringBuilder program = new StringBuilder();
+        for(int f = 0; f < 500; f++){
+            program.append("void function").append(f).append("(){\n");
+            for(int s = 0; s < 20; s++){
+                switch(s % 3){
+                    case 0:
+                        // a single literal still goes through every precedence level
+                        program.append("    x = ").append(s).append(";\n");
+                        break;
+                    case 1:
+                        program.append("    x = a + b * c - d / 2 % e < f && g == h || i != j;\n");
+                        break;
+                    default:
+                        program.append("    if (x >= y + 1 && z <= (w - 1) * 2) x = x + y + z + w + 1;\n");
+                }
+            }
+            program.append("}\n");
+        }
+        return program.toString();
+    }
+}
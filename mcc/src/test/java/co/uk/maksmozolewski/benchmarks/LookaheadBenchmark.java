@@ -0,0 +1,93 @@
+package co.uk.maksmozolewski.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.TokenCursor;
+import co.uk.maksmozolewski.lexer.TokenStream;
+import co.uk.maksmozolewski.lexer.TokenWindow;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+
+/**
+ * Times the parser on the parts of the grammar which need lookahead: telling variable declarations from
+ * function declarations, and typecasts from parenthesised expressions.
+ * Each is parsed from a token stream built beforehand, so only the parser is timed, and from a token window
+ * which lexes as it goes. Not a test, run it with make bench BENCH=LookaheadBenchmark.
+ */
+public class LookaheadBenchmark {
+
+    private static final int WARMUP_RUNS = 10;
+    private static final int RUNS = 20;
+
+    private interface CursorFactory {
+        TokenCursor create(File file) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        bench("declarations", declarations());
+        bench("casts", casts());
+    }
+
+    private static void bench(String name, String program) throws IOException {
+        File source = File.createTempFile("lookaheadBenchmark", ".c");
+        source.deleteOnExit();
+        Files.writeString(source.toPath(), program);
+
+        System.out.println(name + " (" + (source.length() / 1024) + "KB, best of " + RUNS + " runs)");
+
+        // tokenised outside of the timed part so the parser is all that's measured
+        TokenStream stream = new Tokeniser(new Scanner(source)).tokenise();
+        run("stream", source, file -> stream.cursor());
+        run("window", source, file -> new TokenWindow(new Tokeniser(new Scanner(file))));
+    }
+
+    private static void run(String name, File source, CursorFactory factory) throws IOException {
+        for(int i = 0; i < WARMUP_RUNS; i++){
+            new Parser(factory.create(source)).parse();
+        }
+
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < RUNS; i++){
+            TokenCursor cursor = factory.create(source);
+            long start = System.nanoTime();
+            Parser parser = new Parser(cursor);
+            parser.parse();
+            best = Math.min(best, System.nanoTime() - start);
+
+            if(parser.getErrorCount() != 0)
+                throw new IllegalStateException("benchmark program did not parse");
+        }
+        System.out.printf("    %-8s %8.2f ms%n", name, best / 1e6);
+    }
+
+    /** global variables followed by functions, each needs two tokens of lookahead to decide */
+    private static String declarations(){
+        StringBuilder program = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            program.append("int global").append(i).append(";\n");
+            program.append("char* name").append(i).append(";\n");
+        }
+        for(int i = 0; i < 2000; i++){
+            program.append("int function").append(i).append("(int a){\n");
+            program.append("    int x;\n    char y;\n    int z[4];\n");
+            program.append("    return a;\n}\n");
+        }
+        return program.toString();
+    }
+
+    /** expressions mixing typecasts and parenthesised expressions, each needs one token of lookahead to decide */
+    private static String casts(){
+        StringBuilder program = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            program.append("void function").append(i).append("(){\n");
+            for(int s = 0; s < 20; s++){
+                program.append("    x = (int)(c) + (a * (b - 1)) - (char)(d);\n");
+            }
+            program.append("}\n");
+        }
+        return program.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package co.uk.maksmozolewski.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import co.uk.maksmozolewski.lexer.PipelinedTokenCursor;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+
+/**
+ * Measures end to end parse throughput, from reading the file to having the AST. Compares lexing as the parser
+ * goes, lexing pipelined on a separate thread, and lexing up front then parsing function bodies in parallel.
+ * Not a test, run it with make bench.
+ */
+public class ParseBenchmark {
+
+    private static final int FUNCTIONS = 4000;
+    private static final int STATEMENTS_PER_FUNCTION = 40;
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 10;
+
+    private interface ParserFactory {
+        Parser create(File file) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File source = File.createTempFile("parseBenchmark", ".c");
+        source.deleteOnExit();
+        Files.writeString(source.toPath(), generateProgram());
+
+        System.out.println("Parsing " + (source.length() / 1024) + "KB, best of " + RUNS + " runs");
+        run("serial", source, file -> new Parser(new Tokeniser(new Scanner(file))));
+        run("pipelined", source, file -> new Parser(new PipelinedTokenCursor(new Tokeniser(new Scanner(file)))));
+        run("parallel", source, file -> new Parser(new Tokeniser(new Scanner(file)).tokenise(), file, ForkJoinPool.commonPool()));
+    }
+
+    private static void run(String name, File source, ParserFactory factory) throws IOException {
+        for(int i = 0; i < WARMUP_RUNS; i++){
+            factory.create(source).parse();
+        }
+
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < RUNS; i++){
+            long start = System.nanoTime();
+            Parser parser = factory.create(source);
+            parser.parse();
+            best = Math.min(best, System.nanoTime() - start);
+
+            if(parser.getErrorCount() != 0)
+                throw new IllegalStateException("benchmark program did not parse");
+        }
+
+        double seconds = best / 1e9;
+        System.out.printf("%-10s %8.2f ms %8.2f MB/s%n", name, best / 1e6, source.length() / seconds / (1 << 20));
+    }
+
+    private static String generateProgram(){
+        StringBuilder program = new StringBuilder();
+        program.append("struct point {\n    int x;\n    int y;\n};\n");
+        program.append("int counter;\n");
+        for(int f = 0; f < FUNCTIONS; f++){
+            program.append("int function").append(f).append("(int a, char* s){\n");
+            program.append("    struct point p;\n    int values[10];\n    char c;\n");
+            for(int s = 0; s < STATEMENTS_PER_FUNCTION; s++){
+                switch(s % 4){
+                    case 0:
+                        program.append("    p.x = a * ").append(s).append(" + values[").append(s % 10).append("] / 2;\n");
+                        break;
+                    case 1:
+                        program.append("    if (p.x >= p.y && (int)c != 0) { counter = counter + 1; } else { print_s(s); }\n");
+                        break;
+                    case 2:
+                        program.append("    // update the counter\n    while (counter < 10) counter = counter + (p.y - ").append(s).append(");\n");
+                        break;
+                    default:
+                        program.append("    c = 'x'; /* a comment */ print_s(\"text\\n\");\n");
+                }
+            }
+            program.append("    return p.x;\n}\n");
+        }
+        return program.toString();
+    }
+}
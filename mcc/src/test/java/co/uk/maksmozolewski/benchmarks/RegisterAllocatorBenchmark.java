@@ -0,0 +1,140 @@
+package co.uk.maksmozolewski.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.gen.CodeGenerator;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+import co.uk.maksmozolewski.sem.SemanticAnalyzer;
+
+/**
+ * Compares the register allocators on the sample programs: values spilled, moves coalesced, instructions emitted
+ * and, when MARS is there to run them, instructions executed.
+ * Locals live in the frame so only values within a statement compete for registers, the samples never run out of them,
+ * so a generated program with expressions too deep for the registers is compared too.
+ * Not a test, run it with make bench BENCH=RegisterAllocatorBenchmark.
+ */
+public class RegisterAllocatorBenchmark {
+
+    private static final File SAMPLES = new File("..");
+    private static final File MARS = new File("../Mars4_5.jar");
+    /** what the samples reading input get given */
+    private static final String INPUT = "a\n5\n";
+
+    private static final Pattern REGISTERS = Pattern.compile("# REGISTERS: (\\d+) spilled, (\\d+) moves coalesced");
+    private static final Pattern INSTRUCTION = Pattern.compile("^\\s*(?:[\\w$.]+:)?\\s*[a-z]+\\b(?!:)");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File[] samples = SAMPLES.listFiles((dir, name) -> name.startsWith("test") && name.endsWith(".txt"));
+        if(samples == null || samples.length == 0)
+            throw new IllegalStateException("no sample programs in " + SAMPLES.getCanonicalPath());
+        Arrays.sort(samples);
+
+        File generated = File.createTempFile("pressure", ".c");
+        generated.deleteOnExit();
+        Files.writeString(generated.toPath(), generateProgram());
+
+        System.out.printf("%-22s %-16s %8s %10s %8s %9s%n", "program", "allocator", "spilled", "coalesced", "emitted", "executed");
+        for (File sample : samples) {
+            compare(sample.getName(), sample);
+        }
+        compare("pressure (generated)", generated);
+    }
+
+    private static void compare(String name, File source) throws IOException, InterruptedException {
+        Program program = analysed(source);
+        for (RegisterAllocator.Strategy strategy : RegisterAllocator.Strategy.values()) {
+            File asm = File.createTempFile("registerAllocatorBenchmark", ".asm");
+            asm.deleteOnExit();
+            new CodeGenerator(asm, strategy).emitProgram(program);
+            report(name, strategy, asm);
+        }
+    }
+
+    /** a loop around an expression nested deeper than there are registers, and a call waiting on as many values */
+    private static String generateProgram(){
+        String inner = "(x + 1)";
+        for(int i = 0; i < 16; i++){
+            inner = "(" + (i % 2 == 0 ? "i" : "(x + 1)") + " + " + inner + ")";
+        }
+        String outer = "1";
+        for(int i = 2; i <= 20; i++){
+            outer = i + " + (" + outer + " * 1)";
+        }
+
+        return "int f(int x){\n" +
+            "    int i;\n" +
+            "    int t;\n" +
+            "    i = 0;\n" +
+            "    t = 0;\n" +
+            "    while(i < x){\n" +
+            "        t = t + i * " + inner + ";\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    return t;\n" +
+            "}\n" +
+            "void main(){\n" +
+            "    print_i(" + outer + " + f(20));\n" +
+            "}\n";
+    }
+
+    private static Program analysed(File source) throws IOException {
+        Parser parser = new Parser(new Tokeniser(new Scanner(source)));
+        Program program = parser.parse();
+        if(parser.getErrorCount() != 0 || new SemanticAnalyzer().analyze(program) != 0)
+            throw new IllegalStateException(source.getName() + " did not compile");
+        return program;
+    }
+
+    private static void report(String name, RegisterAllocator.Strategy strategy, File asm) throws IOException, InterruptedException {
+        String code = Files.readString(asm.toPath());
+
+        int spilled = 0;
+        int coalesced = 0;
+        Matcher m = REGISTERS.matcher(code);
+        while(m.find()){
+            spilled += Integer.parseInt(m.group(1));
+            coalesced += Integer.parseInt(m.group(2));
+        }
+
+        // only the text segment has instructions, the directives of the data segment come before it
+        int emitted = 0;
+        boolean inText = false;
+        for (String line : code.split("\n")) {
+            String trimmed = line.trim();
+            if(trimmed.startsWith(".text"))
+                inText = true;
+            int comment = line.indexOf('#');
+            String instruction = comment == -1 ? line : line.substring(0, comment);
+            if(inText && !trimmed.startsWith(".") && INSTRUCTION.matcher(instruction).find())
+                emitted++;
+        }
+
+        System.out.printf("%-22s %-16s %8d %10d %8d %9s%n", name, strategy, spilled, coalesced, emitted, executed(asm));
+    }
+
+    /** runs the program in MARS, returning how many instructions it executed or "-" if it can't be run */
+    private static String executed(File asm) throws IOException, InterruptedException {
+        if(!MARS.exists())
+            return "-";
+
+        Process mars = new ProcessBuilder("java", "-jar", MARS.getPath(), "nc", "me", "ic", "1000000", asm.getPath())
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        mars.getOutputStream().write(INPUT.getBytes());
+        mars.getOutputStream().close();
+        // the count goes to stderr, on its own line after anything else MARS complains about
+        String output = new String(mars.getErrorStream().readAllBytes()).trim();
+        if(mars.waitFor() != 0 || !output.matches("(?s).*\\b\\d+$"))
+            return "-";
+        return output.substring(output.lastIndexOf('\n') + 1).trim();
+    }
+}
@@ -0,0 +1,96 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.ArrayType;
+import co.uk.maksmozolewski.ast.BaseType;
+
+public class ArrayIndexingTest extends CompilerTest {
+
+    @Test
+    public void testExactSizes(){
+        assertEquals(5, new ArrayType(BaseType.CHAR, 5).sizeOfType());
+        assertEquals(8, new ArrayType(BaseType.CHAR, 8).sizeOfType());
+        assertEquals(12, new ArrayType(BaseType.INT, 3).sizeOfType());
+    }
+
+    @Test
+    public void testArrayDoesntOverwriteVariables() throws IOException, InterruptedException {
+        String output = runProgram(
+            "void main(){\n" +
+            "    int b;\n" +
+            "    int a[3];\n" +
+            "    char c;\n" +
+            "    b = 5;\n" +
+            "    c = 'c';\n" +
+            "    a[0] = 1;\n" +
+            "    a[1] = 2;\n" +
+            "    a[2] = 3;\n" +
+            "    print_i(b);\n" +
+            "    print_c(c);\n" +
+            "    print_i(a[0] + a[1] + a[2]);\n" +
+            "}");
+        assertEquals("5c6", output);
+    }
+
+    @Test
+    public void testCharArray() throws IOException, InterruptedException {
+        String output = runProgram(
+            "void main(){\n" +
+            "    char s[6];\n" +
+            "    int i;\n" +
+            "    i = 0;\n" +
+            "    while(i < 5){\n" +
+            "        s[i] = 'a';\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    s[1] = 'b';\n" +
+            "    s[5] = '\\0';\n" +
+            "    print_s((char*)s);\n" +
+            "}");
+        assertEquals("abaaa", output);
+    }
+
+    @Test
+    public void testStructElements() throws IOException, InterruptedException {
+        // 3 byte elements need a multiply rather than a shift
+        String output = runProgram(
+            "struct rgb { char r; char g; char b; };\n" +
+            "void main(){\n" +
+            "    struct rgb colours[4];\n" +
+            "    int i;\n" +
+            "    i = 0;\n" +
+            "    while(i < 4){\n" +
+            "        colours[i].r = 'r';\n" +
+            "        colours[i].g = 'g';\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    colours[2].g = 'z';\n" +
+            "    print_c(colours[1].g);\n" +
+            "    print_c(colours[2].g);\n" +
+            "    print_c(colours[3].r);\n" +
+            "    print_i(sizeof(struct rgb));\n" +
+            "}");
+        assertEquals("gzr3", output);
+    }
+
+    @Test
+    public void testPointerArithmeticOnStructs() throws IOException, InterruptedException {
+        String output = runProgram(
+            "struct pair { int a; int b; };\n" +
+            "void main(){\n" +
+            "    struct pair* p;\n" +
+            "    int* second;\n" +
+            "    p = (struct pair*)mcmalloc(sizeof(struct pair) * 3);\n" +
+            "    p[1].b = 7;\n" +
+            "    second = (int*)(p + 1);\n" +
+            "    print_i(*(second + 1));\n" +
+            "}");
+        assertEquals("7", output);
+    }
+}
@@ -0,0 +1,143 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+
+public class CallingConventionTest extends CompilerTest {
+
+    @Test
+    public void testRecursion() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int fib(int n){\n" +
+            "    if(n < 2){ return n; }\n" +
+            "    return fib(n - 1) + fib(n - 2);\n" +
+            "}\n" +
+            "void main(){ print_i(fib(12)); }");
+        assertEquals("144", output);
+
+        // n and fib(n - 1) are live across the second call, nothing else ever is, so they're the only values kept in callee saved registers
+        String asm = asm();
+        String fib = asm.substring(asm.indexOf("fib:"), asm.indexOf("$return_fib:"));
+        assertTrue(fib.contains("$_reg_dump_$s1"), fib);
+        assertFalse(fib.contains("$_reg_dump_$s2"), fib);
+        assertFalse(asm.contains("$_reg_dump_$t"), asm);
+    }
+
+    @Test
+    public void testCalleeSavesOnlyWhatItUses() throws IOException, InterruptedException {
+        // deep right leaning sums keep enough values live to run out of caller saved registers
+        String output = runProgram(
+            "int deep(int x){\n" +
+            "    return (x+1)+((x+2)+((x+3)+((x+4)+((x+5)+((x+6)+((x+7)+((x+8)+((x+9)+((x+10)+((x+11)+((x+12)+(x+13))))))))))));\n" +
+            "}\n" +
+            "int shallow(int x){ return x + 1; }\n" +
+            "void main(){\n" +
+            "    print_i(1+(2+(3+(4+(5+(6+(7+(8+(9+(10+(11+(12+deep(2)))))))))))));\n" +
+            "    print_c(' ');\n" +
+            "    print_i(shallow(1));\n" +
+            "}");
+        assertEquals("195 2", output);
+
+        String asm = asm();
+        String deep = asm.substring(asm.indexOf("deep:"), asm.indexOf("$return_deep:"));
+        String shallow = asm.substring(asm.indexOf("shallow:"), asm.indexOf("$return_shallow:"));
+        assertTrue(deep.contains("sw $s0,"), deep);
+        assertFalse(shallow.contains("$_reg_dump_$s"), shallow);
+    }
+
+    @Test
+    public void testEarlyReturnsShareEpilogue() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int sign(int x){\n" +
+            "    if(x < 0){ return 0 - 1; }\n" +
+            "    if(x == 0){ return 0; }\n" +
+            "    return 1;\n" +
+            "}\n" +
+            "void main(){ print_i(sign(0 - 5)); print_i(sign(0)); print_i(sign(7)); }");
+        assertEquals("-101", output);
+
+        String asm = asm();
+        String sign = asm.substring(asm.indexOf("sign:"), asm.indexOf("main:"));
+        assertEquals(1, sign.split("jr \\$ra", -1).length - 1, sign);
+    }
+
+    @Test
+    public void testArgumentsInRegisters() throws IOException, InterruptedException {
+        String output = runProgram(
+            "void set(int* p, int v){ *p = v; p[1] = v + 1; }\n" +
+            "int sum6(int a, int b, int c, int d, int e, int f){ a = a * 100000; return a + b * 10000 + c * 1000 + d * 100 + e * 10 + f; }\n" +
+            "int twice(int x){ return x * 2; }\n" +
+            "void main(){\n" +
+            "    int* p;\n" +
+            "    p = (int*)mcmalloc(8);\n" +
+            "    set(p, 4);\n" +
+            "    print_i(sum6(1, twice(1), 3, p[0], p[1], twice(3)));\n" +
+            "}");
+        assertEquals("123456", output);
+
+        // only the two arguments after the fourth go on the stack, and come off it in one go
+        String asm = asm();
+        String main = asm.substring(asm.indexOf("main:"), asm.indexOf("$return_main:"));
+        assertEquals(2, main.split("push argument", -1).length - 1, main);
+        assertEquals(1, main.split("shrink stack", -1).length - 1, main);
+    }
+
+    @Test
+    public void testLeafAndFramelessFunctions() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int g;\n" +
+            "int get(){ return g; }\n" +
+            "int add(int a, int b){ return a + b; }\n" +
+            "int local(int x){ int y; y = x * 2; return y; }\n" +
+            "int outer(int x){ return add(x, 1); }\n" +
+            "void main(){ g = 5; print_i(get() + add(1, 2) + local(3) + outer(4)); }");
+        assertEquals("19", output);
+
+        String asm = asm();
+        // leaf functions with nothing on the stack touch neither the stack nor $ra, besides returning
+        String get = asm.substring(asm.indexOf("get:"), asm.indexOf("add:"));
+        String add = asm.substring(asm.indexOf("add:"), asm.indexOf("local:"));
+        assertFalse(get.contains("$sp") || get.contains("$fp") || get.contains("sw $ra"), get);
+        assertFalse(add.contains("$sp") || add.contains("$fp") || add.contains("sw $ra"), add);
+
+        // a local needs the frame, but not $ra
+        String local = asm.substring(asm.indexOf("local:"), asm.indexOf("outer:"));
+        assertTrue(local.contains("move $fp,$sp"), local);
+        assertFalse(local.contains("sw $ra"), local);
+
+        // a call needs $ra kept, but without anything on the stack there's no frame
+        String outer = asm.substring(asm.indexOf("outer:"), asm.indexOf("main:"));
+        assertTrue(outer.contains("sw $ra"), outer);
+        assertFalse(outer.contains("$fp"), outer);
+    }
+
+    @Test
+    public void testPassedValuesStayInTheirRegisters() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int inc(int x){ return x + 1; }\n" +
+            "int both(int a, int b){ print_i(a); return b; }\n" +
+            "void main(){ int r; r = inc(41); print_i(inc(r)); print_i(both(inc(1), 3)); }");
+        assertEquals("4323", output);
+
+        // the argument is added to where it came in and the sum written where it's given back
+        String asm = asm();
+        String inc = asm.substring(asm.indexOf("inc:"), asm.indexOf("both:"));
+        assertTrue(inc.contains("add $v0,"), inc);
+        assertFalse(inc.contains("move return val"), inc);
+
+        // results passed straight on to another call go from $v0 to the argument register
+        String main = asm.substring(asm.indexOf("main:"), asm.indexOf("$return_main:"));
+        assertTrue(main.contains("move $a0,$v0"), main);
+
+        // an argument still needed after a call is taken out of its register, which the call's own arguments overwrite
+        String both = asm.substring(asm.indexOf("both:"), asm.indexOf("main:"));
+        assertTrue(both.contains("move $s0,$a1"), both);
+    }
+}
@@ -0,0 +1,124 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.Block;
+import co.uk.maksmozolewski.ast.FunDecl;
+import co.uk.maksmozolewski.ast.If;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.gen.FrameLayout;
+import co.uk.maksmozolewski.gen.Register;
+
+public class FrameLayoutTest extends CompilerTest {
+
+    @Test
+    public void testParamsAboveFramePointer() throws FileNotFoundException, IOException {
+        Program p = analysed(
+            "struct s { int x; };\n" +
+            "int f(int a, char b, struct s c, int* d, int e, char g){ return a; } void main(){ }");
+        FunDecl f = p.funDecls.get(0);
+        FrameLayout layout = new FrameLayout(f, 0);
+
+        // the first four come in registers unless they're bigger than a word
+        assertEquals(Register.paramRegs[0], layout.getParamRegister(f.params.get(0)));
+        assertEquals(Register.paramRegs[1], layout.getParamRegister(f.params.get(1)));
+        assertEquals(Register.paramRegs[3], layout.getParamRegister(f.params.get(3)));
+        assertFalse(layout.contains(f.params.get(0)));
+
+        // the others are pushed in order, the last one right above the frame pointer
+        assertNull(layout.getParamRegister(f.params.get(2)));
+        assertEquals(12, layout.getOffset(f.params.get(2)));
+        assertEquals(8, layout.getOffset(f.params.get(4)));
+        assertEquals(4, layout.getOffset(f.params.get(5)));
+        assertEquals(0, layout.localWords);
+    }
+
+    @Test
+    public void testLocalsBelowReservedWords() throws FileNotFoundException, IOException {
+        Program p = analysed("void main(){ int a; char b[6]; int c; }");
+        FunDecl main = p.funDecls.get(0);
+        FrameLayout layout = new FrameLayout(main, 3);
+
+        assertEquals(-12, layout.getOffset(main.block.varDecls.get(0)));
+        // two words, addressed by the lower one
+        assertEquals(-20, layout.getOffset(main.block.varDecls.get(1)));
+        assertEquals(-24, layout.getOffset(main.block.varDecls.get(2)));
+        assertEquals(4, layout.localWords);
+    }
+
+    @Test
+    public void testBranchesShareWords() throws FileNotFoundException, IOException {
+        Program p = analysed(
+            "int g;\n" +
+            "void main(){\n" +
+            "    int a;\n" +
+            "    if(a){ int b; int c; } else { int d; }\n" +
+            "}");
+        FunDecl main = p.funDecls.get(0);
+        FrameLayout layout = new FrameLayout(main, 0);
+        If branch = (If)main.block.stmnts.get(0);
+        Block then = (Block)branch.ifStmt;
+        Block otherwise = (Block)branch.elseStmt;
+
+        assertEquals(layout.getOffset(then.varDecls.get(0)), layout.getOffset(otherwise.varDecls.get(0)));
+        assertEquals(3, layout.localWords);
+        assertFalse(layout.contains(p.varDecls.get(0)));
+    }
+
+    @Test
+    public void testNestedScopesAndCalls() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int g;\n" +
+            "int add3(int a, int b, int c){ return a + b * 10 + c * 100; }\n" +
+            "int fact(int n){ if(n < 2){ return 1; } return n * fact(n - 1); }\n" +
+            "void main(){\n" +
+            "    int i;\n" +
+            "    i = 0;\n" +
+            "    g = 7;\n" +
+            "    while(i < 3){\n" +
+            "        int x;\n" +
+            "        char y;\n" +
+            "        x = i * 2;\n" +
+            "        y = 'k';\n" +
+            "        if(x > 1){ int z; z = x + g; print_i(z); } else { int w; w = 9; print_i(w); }\n" +
+            "        print_c(y);\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    print_i(add3(1, add3(2, 3, 4), fact(5)));\n" +
+            "}");
+        assertEquals("9k9k11k16321", output);
+    }
+
+    @Test
+    public void testOneStackAdjustmentPerFunction() throws IOException, InterruptedException {
+        String output = runProgram(
+            "void main(){\n" +
+            "    int i;\n" +
+            "    int total;\n" +
+            "    i = 0;\n" +
+            "    total = 0;\n" +
+            "    while(i < 4){\n" +
+            "        int sq;\n" +
+            "        sq = i * i;\n" +
+            "        if(sq > 3){ int twice; twice = sq * 2; total = total + twice; } else { total = total + sq; }\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    print_i(total);\n" +
+            "}");
+        assertEquals("27", output);
+
+        String asm = Files.readString(tempFile.resolveSibling("testFile.asm"));
+        // main takes its frame once, the stdlib functions have nothing on the stack and the argument of print_i goes in $a0
+        assertEquals(1, asm.split("add space for the frame", -1).length - 1, asm);
+        assertEquals(1, asm.split("addi \\$sp,\\$sp,", -1).length - 1, asm);
+    }
+}
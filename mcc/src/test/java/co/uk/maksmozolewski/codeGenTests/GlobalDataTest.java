@@ -0,0 +1,61 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+
+public class GlobalDataTest extends CompilerTest {
+
+    private static final String PROGRAM =
+        "struct point { int x; char tag; };\n" +
+        "int counts[10];\n" +
+        "char c;\n" +
+        "int total;\n" +
+        "struct point origin;\n" +
+        "char buffer[5];\n" +
+        "void main(){\n" +
+        "    int i;\n" +
+        "    i = 0;\n" +
+        "    while(i < 10){\n" +
+        "        counts[i] = i * i;\n" +
+        "        i = i + 1;\n" +
+        "    }\n" +
+        "    c = 'q';\n" +
+        "    total = counts[9] + counts[3];\n" +
+        "    origin.x = 3;\n" +
+        "    origin.tag = 't';\n" +
+        "    buffer[0] = 'h';\n" +
+        "    buffer[1] = 'i';\n" +
+        "    buffer[2] = '\\0';\n" +
+        "    print_i(total);\n" +
+        "    print_c(c);\n" +
+        "    print_i(origin.x);\n" +
+        "    print_c(origin.tag);\n" +
+        "    print_s((char*)buffer);\n" +
+        "    print_i(counts[4]);\n" +
+        "}";
+
+    @Test
+    public void testGlobalsDontOverlap() throws IOException, InterruptedException {
+        assertEquals("90q3thi16", runProgram(PROGRAM));
+    }
+
+    @Test
+    public void testSizedFromTypesSmallestFirst() throws IOException, InterruptedException {
+        runProgram(PROGRAM);
+        String asm = Files.readString(tempFile.resolveSibling("testFile.asm"));
+
+        int c = asm.indexOf("$_var_c_1: .space 1 ");
+        int total = asm.indexOf("$_var_total_2: .space 4 ");
+        int buffer = asm.indexOf("$_var_buffer_4: .space 5 ");
+        int origin = asm.indexOf("$_var_origin_3: .space 8 ");
+        int counts = asm.indexOf("$_var_counts_0: .space 40 ");
+        assertTrue(c != -1 && c < total && total < buffer && buffer < origin && origin < counts, asm);
+    }
+}
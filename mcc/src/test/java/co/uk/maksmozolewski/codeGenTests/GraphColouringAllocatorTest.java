@@ -0,0 +1,81 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.gen.RegisterAllocator.Strategy;
+
+public class GraphColouringAllocatorTest extends CompilerTest {
+
+    /** a loop around an expression nested deeper than there are registers */
+    private static final String LOOP;
+    static {
+        String inner = "(x + 1)";
+        for (int i = 0; i < 16; i++) {
+            inner = "(" + (i % 2 == 0 ? "i" : "(x + 1)") + " + " + inner + ")";
+        }
+        LOOP =
+            "int f(int x){\n" +
+            "    int i;\n" +
+            "    int t;\n" +
+            "    i = 0;\n" +
+            "    t = 0;\n" +
+            "    while(i < x){\n" +
+            "        t = t + i * " + inner + ";\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    return t;\n" +
+            "}\n" +
+            "void main(){ print_i(f(5)); }";
+    }
+
+    /** returns how many spilled values the code of the loop in f reloads and stores */
+    private int spillCodeInLoop() throws IOException {
+        String asm = asm();
+        int start = asm.indexOf("$while_branch_condition_");
+        String loop = asm.substring(start, asm.indexOf("$while_branch_exit_", asm.indexOf("jump to condition check", start)));
+        return loop.split("spilled value|spill value", -1).length - 1;
+    }
+
+    @Test
+    public void testCallsAndRecursion() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int add3(int a, int b, int c){ return a + b * 10 + c * 100; }\n" +
+            "int fact(int n){ if(n < 2){ return 1; } return n * fact(n - 1); }\n" +
+            "int deep(int x){ return x+(x+(x+(x+(x+(x+(x+(x+(x+(x+(x+(x+x))))))))))); }\n" +
+            "void main(){\n" +
+            "    print_i(add3(1, add3(2, 3, 4), fact(5)));\n" +
+            "    print_c(' ');\n" +
+            "    print_i(1+(2+(3+(4+(5+(6+(7+(8+(9+(10+(11+(12+deep(2)))))))))))));\n" +
+            "}", Strategy.GRAPH_COLOURING);
+        assertEquals("16321 104", output);
+        assertFalse(asm().contains("$vr"));
+    }
+
+    @Test
+    public void testWideExpressionSpills() throws IOException, InterruptedException {
+        String sum = "1";
+        for (int i = 2; i <= 40; i++) {
+            sum = i + "+(" + sum + "*1)";
+        }
+        assertEquals("820", runProgram("void main(){ print_i(" + sum + "); }", Strategy.GRAPH_COLOURING));
+        assertTrue(asm().contains("reload spilled value"));
+    }
+
+    @Test
+    public void testSpillsOutsideLoopsFirst() throws IOException, InterruptedException {
+        assertEquals("780", runProgram(LOOP, Strategy.LINEAR_SCAN));
+        int linearScan = spillCodeInLoop();
+
+        assertEquals("780", runProgram(LOOP, Strategy.GRAPH_COLOURING));
+        int graphColouring = spillCodeInLoop();
+
+        assertTrue(graphColouring < linearScan, graphColouring + " spill instructions in the loop, linear scan has " + linearScan);
+    }
+}
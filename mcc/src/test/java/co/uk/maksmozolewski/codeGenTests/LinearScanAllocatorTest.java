@@ -0,0 +1,54 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+
+public class LinearScanAllocatorTest extends CompilerTest {
+
+    @Test
+    public void testWideExpressionSpills() throws IOException, InterruptedException {
+        // every operand on the left stays live until the innermost sum is done, far more than there are registers
+        String sum = "1";
+        for (int i = 2; i <= 40; i++) {
+            sum = i + "+(" + sum + "*1)";
+        }
+        String output = runProgram("void main(){ print_i(" + sum + "); }");
+        assertEquals("820", output);
+
+        String asm = asm();
+        assertTrue(asm.contains("spill value"), asm);
+        assertTrue(asm.contains("reload spilled value"), asm);
+        assertFalse(asm.contains("$vr"), asm);
+    }
+
+    @Test
+    public void testValuesLiveAroundLoops() throws IOException, InterruptedException {
+        String output = runProgram(
+            "int twice(int x){ return x * 2; }\n" +
+            "void main(){\n" +
+            "    int i;\n" +
+            "    int t;\n" +
+            "    i = 0;\n" +
+            "    t = 0;\n" +
+            "    while(i < 5){\n" +
+            "        t = t + (i + (i * (i + twice(i + twice(i)))));\n" +
+            "        i = i + 1;\n" +
+            "    }\n" +
+            "    print_i(t);\n" +
+            "}");
+        assertEquals("220", output);
+
+        // the values waiting on the calls go in callee saved registers, nothing is saved around the calls
+        String asm = asm();
+        String main = asm.substring(asm.indexOf("main:"), asm.indexOf("$return_main:"));
+        assertTrue(main.contains("$s0"), main);
+        assertFalse(main.contains("save live register"), main);
+    }
+}
@@ -0,0 +1,45 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+
+public class StringPoolTest extends CompilerTest {
+
+    private static final String PROGRAM =
+        "void main(){\n" +
+        "    print_s((char*)\"error\\n\");\n" +
+        "    print_s((char*)\"\\n\");\n" +
+        "    print_s((char*)\"ror\\n\");\n" +
+        "    print_s((char*)\"error\\n\");\n" +
+        "    print_s((char*)\"say \\\"hi\\\"\\t\\\\\");\n" +
+        "    print_s((char*)\"\\n\");\n" +
+        "}";
+
+    @Test
+    public void testPooledStringsPrint() throws IOException, InterruptedException {
+        assertEquals("error\n\nror\nerror\nsay \"hi\"\t\\\n", runProgram(PROGRAM));
+    }
+
+    @Test
+    public void testSharedStorage() throws IOException, InterruptedException {
+        runProgram(PROGRAM);
+        String asm = Files.readString(tempFile.resolveSibling("testFile.asm"));
+
+        // the repeats and both suffixes live inside the one copy of "error\n"
+        assertTrue(asm.contains(": .ascii \"er\"\n"), asm);
+        assertTrue(asm.contains(": .ascii \"ror\"\n"), asm);
+        assertTrue(asm.contains(": .asciiz \"\\n\"\n"), asm);
+        assertEquals(asm.indexOf("\"say"), asm.lastIndexOf("\"say"), asm);
+        assertTrue(asm.contains("\"say \\\"hi\\\"\\t\\\\\""), asm);
+
+        // 7 + 2 + 5 + 7 + 11 + 2 bytes of literals in 7 + 11 bytes of data
+        assertTrue(asm.contains("# STRINGS: 16 bytes saved"), asm);
+    }
+}
@@ -0,0 +1,91 @@
+package co.uk.maksmozolewski.codeGenTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.ast.StructLayout;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
+
+public class StructLayoutTest extends CompilerTest {
+
+    @Test
+    public void testCharsPacked() throws FileNotFoundException, IOException {
+        Program p = analysed("struct s { char a; char b; int c; char d; }; void main(){ }");
+        StructLayout layout = p.structTypeDecls.get(0).getLayout();
+
+        assertEquals(0, layout.getOffset("a"));
+        assertEquals(1, layout.getOffset("b"));
+        assertEquals(4, layout.getOffset("c"));
+        assertEquals(8, layout.getOffset("d"));
+        assertEquals(4, layout.alignment);
+        assertEquals(12, layout.size);
+        assertEquals(-1, layout.getOffset("e"));
+    }
+
+    @Test
+    public void testOnlyChars() throws FileNotFoundException, IOException {
+        Program p = analysed("struct s { char a; char b; char c; }; void main(){ }");
+        StructLayout layout = p.structTypeDecls.get(0).getLayout();
+
+        assertEquals(2, layout.getOffset("c"));
+        assertEquals(1, layout.alignment);
+        assertEquals(3, layout.size);
+    }
+
+    @Test
+    public void testNestedStruct() throws FileNotFoundException, IOException {
+        Program p = analysed(
+            "struct inner { int x; char y; };\n" +
+            "struct outer { char a; struct inner b; char c; };\n" +
+            "void main(){ }");
+        StructLayout layout = p.structTypeDecls.get(1).getLayout();
+
+        assertEquals(4, layout.getOffset("b"));
+        assertEquals(12, layout.getOffset("c"));
+        assertEquals(16, layout.size);
+    }
+
+    @Test
+    public void testFieldsDontOverlap() throws IOException, InterruptedException {
+        String output = runProgram(
+            "struct pair { char tag; int value; char flag; };\n" +
+            "void main(){\n" +
+            "    struct pair p;\n" +
+            "    p.tag = 'a';\n" +
+            "    p.value = 1234;\n" +
+            "    p.flag = 'b';\n" +
+            "    print_c(p.tag);\n" +
+            "    print_i(p.value);\n" +
+            "    print_c(p.flag);\n" +
+            "}");
+        assertEquals("a1234b", output);
+    }
+
+    @Test
+    public void testSameNameInAnotherProgram() throws IOException, InterruptedException {
+        Program first = analysed(
+            "struct p { char c; int x; };\n" +
+            "void main(){\n" +
+            "    struct p s;\n" +
+            "    s.c = 'a';\n" +
+            "    s.x = 7;\n" +
+            "    print_c(s.c);\n" +
+            "    print_i(s.x);\n" +
+            "    print_i(sizeof(struct p));\n" +
+            "}");
+        Program second = analysed("struct p { int y; int z; char d; int x; }; void main(){ }");
+
+        // each program keeps the layout of its own declaration
+        assertNotSame(first.structTypeDecls.get(0).structType, second.structTypeDecls.get(0).structType);
+        assertEquals(8, first.structTypeDecls.get(0).structType.sizeOfType());
+        assertEquals(16, second.structTypeDecls.get(0).structType.sizeOfType());
+        assertEquals("a78", runProgram(first, RegisterAllocator.Strategy.LINEAR_SCAN));
+    }
+}
@@ -0,0 +1,126 @@
+package co.uk.maksmozolewski.irTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.FunDecl;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.gen.DataSegmentMemory;
+import co.uk.maksmozolewski.gen.FrameLayout;
+import co.uk.maksmozolewski.gen.MipsWriter;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
+import co.uk.maksmozolewski.ir.BasicBlock;
+import co.uk.maksmozolewski.ir.Branch;
+import co.uk.maksmozolewski.ir.IRFunction;
+import co.uk.maksmozolewski.ir.IRLowering;
+import co.uk.maksmozolewski.ir.Instruction;
+import co.uk.maksmozolewski.ir.Jump;
+import co.uk.maksmozolewski.ir.Load;
+import co.uk.maksmozolewski.ir.Store;
+import co.uk.maksmozolewski.ir.Temp;
+
+public class IRLoweringTest extends CompilerTest {
+
+    /** lowers the first function of the program */
+    private IRFunction lowered(String program) throws FileNotFoundException, IOException {
+        Program p = analysed(program);
+
+        MipsWriter writer = new MipsWriter(new FileWriter(tempFile.resolveSibling("testFile.asm").toFile()));
+        FunDecl f = p.funDecls.get(0);
+        return new IRLowering(new DataSegmentMemory(writer, new RegisterAllocator(RegisterAllocator.Strategy.LINEAR_SCAN)))
+            .lower(f, new FrameLayout(f, 0));
+    }
+
+    private static List<Instruction> instructions(IRFunction f) {
+        List<Instruction> out = new ArrayList<Instruction>();
+        for (BasicBlock block : f.getBlocks()) {
+            out.addAll(block.getInstructions());
+        }
+        return out;
+    }
+
+    @Test
+    public void testLocalsAndFieldsAddressedOffFrame() throws FileNotFoundException, IOException {
+        IRFunction f = lowered(
+            "struct p { int x; char c; int y; };\n" +
+            "int f(int a){ int v; struct p s; v = a + 1; s.y = v; s.c = 'k'; return s.y; }\n" +
+            "void main(){ }");
+        List<Instruction> code = instructions(f);
+
+        // nothing computes an address, every variable and field is at a constant offset from the frame
+        List<Store> stores = new ArrayList<Store>();
+        List<Load> loads = new ArrayList<Load>();
+        for (Instruction i : code) {
+            if (i instanceof Store)
+                stores.add((Store) i);
+            if (i instanceof Load)
+                loads.add((Load) i);
+            assertFalse(i.toString().contains(" = add %fp"), f.toString());
+        }
+        assertEquals(3, stores.size(), f.toString());
+        for (Store s : stores) {
+            assertEquals(Temp.FRAME, s.base, f.toString());
+        }
+        // the byte field is stored as a byte, 4 after the struct's start
+        assertEquals(1, stores.get(2).size);
+        assertEquals(stores.get(1).offset - 4, stores.get(2).offset);
+        assertEquals(stores.get(1).offset, loads.get(loads.size() - 1).offset);
+    }
+
+    @Test
+    public void testLoopBlocks() throws FileNotFoundException, IOException {
+        IRFunction f = lowered(
+            "int f(int n){ int t; t = 0; while(n > 0){ t = t + n; n = n - 1; } return t; }\n" +
+            "void main(){ }");
+        List<BasicBlock> blocks = f.getBlocks();
+
+        BasicBlock condition = null;
+        for (BasicBlock b : blocks) {
+            if (b.label != null && b.label.startsWith("$while_branch_condition_"))
+                condition = b;
+        }
+        assertTrue(condition.getLast() instanceof Branch, f.toString());
+
+        // the condition either goes into the body or leaves the loop, the body goes back to the condition
+        List<BasicBlock> successors = f.successors(condition);
+        assertEquals(2, successors.size(), f.toString());
+        BasicBlock body = successors.get(1);
+        assertEquals(blocks.indexOf(condition) + 1, blocks.indexOf(body));
+        assertTrue(successors.get(0).label.startsWith("$while_branch_exit_"), f.toString());
+        assertTrue(body.getLast() instanceof Jump, f.toString());
+        assertEquals(condition, f.successors(body).get(0));
+
+        // the last block only returns
+        assertTrue(f.successors(blocks.get(blocks.size() - 1)).isEmpty());
+    }
+
+    @Test
+    public void testLoweredProgramRuns() throws IOException, InterruptedException {
+        String output = runProgram(
+            "struct p { int x; char c; };\n" +
+            "int g[3];\n" +
+            "int both(int a, int b){ return a && b; }\n" +
+            "int either(int a, int b){ return a || b; }\n" +
+            "void main(){\n" +
+            "    struct p l;\n" +
+            "    char* s;\n" +
+            "    l.x = 7;\n" +
+            "    l.c = 'q';\n" +
+            "    g[2] = l.x * 6;\n" +
+            "    s = (char*)\"ok\";\n" +
+            "    print_i(g[2]); print_c(l.c); print_c(*s); print_c(s[1]);\n" +
+            "    print_i(both(3, 0 - 1)); print_i(either(0 - 1, 0)); print_i(either(0, 0));\n" +
+            "}");
+        assertEquals("42qok110", output);
+    }
+}
@@ -1,13 +1,18 @@
 package co.uk.maksmozolewski.parserTests;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.junit.jupiter.api.Test;
 
 import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.Assign;
 import co.uk.maksmozolewski.ast.BinOp;
 import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.ast.VarExpr;
 
 public class ComplexParserTest extends CompilerTest {
     
@@ -43,4 +48,89 @@ public class ComplexParserTest extends CompilerTest {
         "Program(FunDecl(BaseType(INT),main,Block(Assign(VarExpr(hello),BinOp(BinOp(BinOp(BinOp(BinOp(BinOp(IntLiteral(2),Op(ADD),IntLiteral(2)),Op(MUL),IntLiteral(4)),Op(MOD),IntLiteral(5)),Op(DIV),IntLiteral(2)),Op(SUB),IntLiteral(1)),Op(ADD),FunCallExpr(func))),Return(IntLiteral(0)))))");
     }
 
+    @Test
+    public void testPrecedenceLevels() throws FileNotFoundException, IOException {
+        setupParser(
+            "void main(){" + "\n"+
+            "   x = a || b && c == d < e + f * g - h / i % j || k;" + "\n"+
+            "}"
+        );
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertASTPrint(program,
+        "Program(FunDecl(BaseType(VOID),main,Block(Assign(VarExpr(x),BinOp(BinOp(VarExpr(a),Op(OR),BinOp(VarExpr(b),Op(AND),BinOp(VarExpr(c),Op(EQ),BinOp(VarExpr(d),Op(LT),BinOp(BinOp(VarExpr(e),Op(ADD),BinOp(VarExpr(f),Op(MUL),VarExpr(g))),Op(SUB),BinOp(BinOp(VarExpr(h),Op(DIV),VarExpr(i)),Op(MOD),VarExpr(j))))))),Op(OR),VarExpr(k))))))");
+    }
+
+    @Test
+    public void testLongOperatorChain() throws FileNotFoundException, IOException {
+        StringBuilder chain = new StringBuilder("a");
+        for(int i = 0; i < 100000; i++){
+            chain.append(" + a");
+        }
+        setupParser("void main(){ x = " + chain + "; }");
+        Program program = testParser.parse();
+        assertNoParserErrors();
+
+        // left associative, so the tree leans left and the last operand is on the right of the root
+        Assign assign = (Assign)program.funDecls.get(0).block.stmnts.get(0);
+        BinOp root = (BinOp)assign.rhs;
+        assertTrue(root.lhs instanceof BinOp);
+        assertTrue(root.rhs instanceof VarExpr);
+    }
+
+    @Test
+    public void testFunCallArgs() throws FileNotFoundException, IOException {
+        setupParser(
+            "void main(){" + "\n"+
+            "   f(a, 1 + 2, g(b, c));" + "\n"+
+            "}"
+        );
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertASTPrint(program,
+        "Program(FunDecl(BaseType(VOID),main,Block(ExprStmt(FunCallExpr(f,VarExpr(a),BinOp(IntLiteral(1),Op(ADD),IntLiteral(2)),FunCallExpr(g,VarExpr(b),VarExpr(c)))))))");
+    }
+
+    @Test
+    public void testManyDeclarationsAndStatements() throws Throwable {
+        int count = 200000;
+        StringBuilder program = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            program.append("int global").append(i).append(";\n");
+        }
+        program.append("void main(){\n");
+        for(int i = 0; i < 1000; i++){
+            program.append("    int local").append(i).append(";\n");
+        }
+        for(int i = 0; i < count; i++){
+            program.append("    x = x + ").append(i).append(";\n");
+        }
+        program.append("}\n");
+        for(int i = 0; i < 1000; i++){
+            program.append("void f").append(i).append("(int a, int b){ f(a, b); }\n");
+        }
+        setupParser(program.toString());
+
+        // parse with a small stack so anything recursing per list item overflows it
+        Program[] result = new Program[1];
+        Throwable[] failure = new Throwable[1];
+        Thread parserThread = new Thread(null, () -> {
+            try {
+                result[0] = testParser.parse();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "parser", 256 * 1024);
+        parserThread.start();
+        parserThread.join();
+
+        if(failure[0] != null)
+            throw failure[0];
+        assertNoParserErrors();
+        assertEquals(1000, result[0].varDecls.size());
+        assertEquals(1001, result[0].funDecls.size());
+        assertEquals(1000, result[0].funDecls.get(0).block.varDecls.size());
+        assertEquals(count, result[0].funDecls.get(0).block.stmnts.size());
+    }
+
 }
@@ -0,0 +1,153 @@
+package co.uk.maksmozolewski.parserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.gen.RegisterAllocator;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.HeaderCache;
+import co.uk.maksmozolewski.parser.Parser;
+import co.uk.maksmozolewski.sem.SemanticAnalyzer;
+
+public class IncludeTest extends CompilerTest {
+
+    private Path writeFile(String name, String content) throws IOException {
+        Path file = tempFile.resolveSibling(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        return file;
+    }
+
+    private Program parseFile(Path file) throws FileNotFoundException, IOException {
+        testParser = new Parser(new Tokeniser(new Scanner(file.toFile())));
+        return testParser.parse();
+    }
+
+    @Test
+    public void testIncludedDeclarationsComeFirst() throws FileNotFoundException, IOException {
+        writeFile("point.h",
+            "struct point { int x; int y; };\n" +
+            "int origin;\n" +
+            "int getX(struct point p){ return p.x; }");
+        setupParser(
+            "#include \"point.h\"\n" +
+            "int count;\n" +
+            "void main(){ }");
+
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertEquals(1, program.structTypeDecls.size());
+        assertEquals("point", program.structTypeDecls.get(0).structType.structTypeIdentifier);
+        assertEquals(2, program.varDecls.size());
+        assertEquals("origin", program.varDecls.get(0).varName);
+        assertEquals("count", program.varDecls.get(1).varName);
+        assertEquals(2, program.funDecls.size());
+        assertEquals("getX", program.funDecls.get(0).name);
+        assertEquals("main", program.funDecls.get(1).name);
+    }
+
+    @Test
+    public void testRelativeToIncludingFile() throws FileNotFoundException, IOException {
+        writeFile("lib/a.h", "#include \"b.h\"\nint a;");
+        writeFile("lib/b.h", "int b;");
+        setupParser("#include \"lib/a.h\"\nint c;");
+
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertEquals(3, program.varDecls.size());
+        assertEquals("b", program.varDecls.get(0).varName);
+        assertEquals("a", program.varDecls.get(1).varName);
+    }
+
+    @Test
+    public void testIncludedOnce() throws FileNotFoundException, IOException {
+        writeFile("common.h", "int shared;");
+        writeFile("left.h", "#include \"common.h\"\nint left;");
+        writeFile("right.h", "#include \"common.h\"\nint right;");
+        setupParser("#include \"left.h\"\n#include \"right.h\"\n#include \"common.h\"\n");
+
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertEquals(3, program.varDecls.size());
+    }
+
+    @Test
+    public void testCycle() throws FileNotFoundException, IOException {
+        writeFile("first.h", "#include \"second.h\"\nint first;");
+        writeFile("second.h", "#include \"first.h\"\nint second;");
+        setupParser("#include \"first.h\"\n");
+
+        Program program = testParser.parse();
+        assertParserErrorsCount(1);
+        assertEquals(2, program.varDecls.size());
+    }
+
+    @Test
+    public void testIncludingItself() throws FileNotFoundException, IOException {
+        setupParser("#include \"testFile\"\nint x;");
+
+        testParser.parse();
+        assertParserErrorsCount(1);
+    }
+
+    @Test
+    public void testMissingIsNotAnError() throws FileNotFoundException, IOException {
+        setupParser("#include \"missing.h\"\nint x;");
+
+        Program program = testParser.parse();
+        assertNoParserErrors();
+        assertEquals(1, program.varDecls.size());
+    }
+
+    @Test
+    public void testHeaderLoadedOncePerProcess() throws FileNotFoundException, IOException {
+        Path header = writeFile("shared.h", "struct s { int a; };\nint shared;");
+        Path[] units = new Path[20];
+        for(int i = 0; i < units.length; i++){
+            units[i] = writeFile("unit" + i + ".c", "#include \"shared.h\"\nint unit" + i + ";");
+        }
+
+        int loadsBefore = HeaderCache.getLoadCount();
+        for (Path unit : units) {
+            Program program = parseFile(unit);
+            assertNoParserErrors();
+            assertEquals(2, program.varDecls.size());
+        }
+        assertEquals(1, HeaderCache.getLoadCount() - loadsBefore);
+
+        // a changed header is loaded again
+        Files.writeString(header, "int shared; int other;");
+        Program program = parseFile(units[0]);
+        assertEquals(3, program.varDecls.size());
+        assertEquals(2, HeaderCache.getLoadCount() - loadsBefore);
+    }
+
+    @Test
+    public void testEachProgramGetsItsOwnDeclarations() throws IOException, InterruptedException {
+        writeFile("counter.h", "int total;\nint add(int n){ total = total + n; return total; }");
+        Path first = writeFile("first.c", "#include \"counter.h\"\nvoid main(){ add(2); print_i(add(3)); }");
+        Path second = writeFile("second.c", "#include \"counter.h\"\nvoid main(){ print_i(add(7)); }");
+
+        Program firstProgram = parseFile(first);
+        assertNoParserErrors();
+        Program secondProgram = parseFile(second);
+        assertNoParserErrors();
+        assertNotSame(firstProgram.funDecls.get(0), secondProgram.funDecls.get(0));
+        assertNotSame(firstProgram.varDecls.get(0), secondProgram.varDecls.get(0));
+
+        // analysing the second program leaves the first one's header nodes pointing at its own declarations
+        assertEquals(0, testAnalyser.analyze(firstProgram));
+        assertEquals(0, new SemanticAnalyzer().analyze(secondProgram));
+        assertEquals("5", runProgram(firstProgram, RegisterAllocator.Strategy.LINEAR_SCAN));
+    }
+}
@@ -0,0 +1,125 @@
+package co.uk.maksmozolewski.parserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.ASTPrinter;
+import co.uk.maksmozolewski.ast.FunDecl;
+import co.uk.maksmozolewski.ast.LazyBlock;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+
+public class LazyParserTest extends CompilerTest {
+
+    private static final String PROGRAM =
+        "int g;\n" +
+        "int add(int a, int b){ int c; c = a + b; return c; }\n" +
+        "void loop(char* s){ while (g > 0) { print_s(s); g = g - 1; } }\n" +
+        "void main(){ print_i(add(1, 2)); }\n";
+
+    private Parser lazyParser(String program) throws FileNotFoundException, IOException {
+        Files.writeString(tempFile, program);
+        return new Parser(new Tokeniser(new Scanner(tempFile.toFile())).tokenise(), tempFile.toFile());
+    }
+
+    private String print(Program program){
+        StringWriter ast = new StringWriter();
+        PrintWriter astWriter = new PrintWriter(ast);
+        program.accept(new ASTPrinter(astWriter));
+        astWriter.flush();
+        return ast.toString();
+    }
+
+    @Test
+    public void testBodiesNotParsedUntilLookedAt() throws FileNotFoundException, IOException {
+        Program program = lazyParser(PROGRAM).parseLazily();
+
+        assertEquals(1, program.varDecls.size());
+        assertEquals(3, program.funDecls.size());
+        assertEquals("add", program.funDecls.get(0).name);
+        assertEquals(2, program.funDecls.get(0).params.size());
+        for (FunDecl funDecl : program.funDecls) {
+            assertFalse(((LazyBlock)funDecl.block).isParsed());
+        }
+
+        assertEquals(1, program.funDecls.get(0).block.varDecls.size());
+        assertTrue(((LazyBlock)program.funDecls.get(0).block).isParsed());
+        assertFalse(((LazyBlock)program.funDecls.get(1).block).isParsed());
+    }
+
+    @Test
+    public void testSameAstOnceLookedAt() throws FileNotFoundException, IOException {
+        setupParser(PROGRAM);
+        String inOrder = print(testParser.parse());
+
+        assertEquals(inOrder, print(lazyParser(PROGRAM).parseLazily()));
+    }
+
+    @Test
+    public void testBodiesCanBeChanged() throws FileNotFoundException, IOException {
+        Program program = lazyParser(PROGRAM).parseLazily();
+        FunDecl main = program.funDecls.get(2);
+
+        main.block.stmnts.addAll(program.funDecls.get(0).block.stmnts);
+        assertEquals(3, main.block.stmnts.size());
+    }
+
+    @Test
+    public void testErrorsCountedWhenParsed() throws FileNotFoundException, IOException {
+        // each body still ends at its closing brace
+        Parser parser = lazyParser("void a(){ x = 1 }\nvoid b(){ return 1 }\n");
+        Program program = parser.parseLazily();
+        assertEquals(0, parser.getErrorCount());
+
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            program.funDecls.get(0).block.stmnts.size();
+            assertEquals(1, parser.getErrorCount());
+            program.funDecls.get(1).block.stmnts.size();
+            assertEquals(2, parser.getErrorCount());
+        } finally {
+            System.setErr(stderr);
+        }
+    }
+
+    @Test
+    public void testMalformedBodyFallsBackToInOrder() throws FileNotFoundException, IOException {
+        // the declaration after a statement ends the first body early, parsed in order the rest of it is read as top level declarations
+        String program = "void a(){ x = 1; int y; y = 2; }\nvoid b(){ return; }\nvoid main(){ }\n";
+
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            setupParser(program);
+            Program inOrder = testParser.parse();
+            int inOrderErrors = testParser.getErrorCount();
+            assertNotEquals(0, inOrderErrors);
+
+            Parser parser = lazyParser(program);
+            Program lazy = parser.parseLazily();
+            assertEquals(inOrder.funDecls.get(0).block.stmnts.size(), lazy.funDecls.get(0).block.stmnts.size());
+            assertEquals(inOrderErrors, parser.getErrorCount());
+            // the other bodies don't add to the count again
+            lazy.funDecls.get(1).block.stmnts.size();
+            assertEquals(inOrderErrors, parser.getErrorCount());
+        } finally {
+            System.setErr(stderr);
+        }
+    }
+}
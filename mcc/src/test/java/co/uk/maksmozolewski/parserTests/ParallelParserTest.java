@@ -0,0 +1,111 @@
+package co.uk.maksmozolewski.parserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.ASTPrinter;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.parser.Parser;
+
+public class ParallelParserTest extends CompilerTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool(){
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool(){
+        pool.shutdown();
+    }
+
+    /** the printed AST, then the error count, then everything written to stderr */
+    private String parse(String program, boolean parallel) throws FileNotFoundException, IOException {
+        Files.writeString(tempFile, program);
+        Tokeniser tokeniser = new Tokeniser(new Scanner(tempFile.toFile()));
+        Parser parser = parallel ?
+            new Parser(tokeniser.tokenise(), tempFile.toFile(), pool) :
+            new Parser(tokeniser);
+
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        ByteArrayOutputStream ast = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true));
+        try {
+            PrintWriter astWriter = new PrintWriter(ast);
+            parser.parse().accept(new ASTPrinter(astWriter));
+            astWriter.flush();
+        } finally {
+            System.setErr(stderr);
+        }
+        return ast + "\n" + parser.getErrorCount() + "\n" + errors;
+    }
+
+    private void assertSameAsInOrder(String program) throws FileNotFoundException, IOException {
+        assertEquals(parse(program, false), parse(program, true));
+    }
+
+    private String functions(int count){
+        StringBuilder program = new StringBuilder("int global;\n");
+        for(int i = 0; i < count; i++){
+            program.append("int f").append(i).append("(int a, char b){\n");
+            program.append("    int x;\n");
+            program.append("    while (a > 0) { if (a % 2 == 0) { x = x + f(a - 1, b); } a = a - 1; }\n");
+            program.append("    { print_i((int)b); }\n");
+            program.append("    return x * ").append(i).append(";\n}\n");
+        }
+        return program.toString();
+    }
+
+    @Test
+    public void testSameProgram() throws FileNotFoundException, IOException {
+        assertSameAsInOrder(functions(500));
+    }
+
+    @Test
+    public void testErrorsInBodies() throws FileNotFoundException, IOException {
+        // errors which don't stop the body from ending at its closing brace, and ones at the top level between them
+        String program =
+            "int g;\n" +
+            "void a(){ x = ; y = 1; }\n" +
+            "int int;\n" +
+            "void b(){ x = 1 }\n" +
+            functions(20) +
+            "void c(){ return 1 }\n";
+        String result = parse(program, true);
+        assertNotEquals("0", result.split("\n")[1]);
+        assertSameAsInOrder(program);
+    }
+
+    @Test
+    public void testBodyParsedPastItsBrace() throws FileNotFoundException, IOException {
+        // the stray ) stops the first body early, in order the rest of the file parses differently
+        String program =
+            functions(5) +
+            "void a(){ x = 1; ) }\n" +
+            functions(5);
+        assertSameAsInOrder(program);
+    }
+
+    @Test
+    public void testUnmatchedBraces() throws FileNotFoundException, IOException {
+        assertSameAsInOrder(functions(5) + "void a(){ { x = 1; }\n");
+        assertSameAsInOrder("void a(){ x = 1; }}}\n" + functions(5));
+    }
+}
@@ -88,6 +88,34 @@ public class ScannerTest{
         }
     }
 
+    @Test
+    public void testPositionAtOffset(){
+        // "Hello World\nLine 2\nFurther text"
+        assertEquals(1, testScanner.getLine(0));
+        assertEquals(0, testScanner.getColumn(0));
+        assertEquals(1, testScanner.getLine(11));
+        assertEquals(11, testScanner.getColumn(11));
+        assertEquals(2, testScanner.getLine(12));
+        assertEquals(0, testScanner.getColumn(12));
+        assertEquals(3, testScanner.getLine(testFile.length()));
+        assertEquals(12, testScanner.getColumn(testFile.length()));
+        // out of order lookups
+        assertEquals(2, testScanner.getLine(17));
+        assertEquals(5, testScanner.getColumn(17));
+        assertEquals(1, testScanner.getLine(3));
+        assertEquals(3, testScanner.getColumn(3));
+    }
+
+    @Test
+    public void testEOF() throws IOException{
+        for(int i = 0; i < testFile.length(); i++){
+            testScanner.next();
+        }
+        assertEquals(testFile.length(), testScanner.getOffset());
+        assertThrows(EOFException.class, ()->{testScanner.peek();});
+        assertThrows(EOFException.class, ()->{testScanner.next();});
+    }
+
     @Test
     public void testClose(){
         assertThrows(IOException.class, ()->{
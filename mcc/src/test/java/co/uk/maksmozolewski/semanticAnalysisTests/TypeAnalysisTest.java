@@ -1,11 +1,20 @@
 package co.uk.maksmozolewski.semanticAnalysisTests;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.junit.jupiter.api.Test;
 
 import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.BaseType;
+import co.uk.maksmozolewski.ast.PointerType;
+import co.uk.maksmozolewski.ast.Program;
+import co.uk.maksmozolewski.ast.StructType;
+import co.uk.maksmozolewski.ast.Types;
 
 public class TypeAnalysisTest extends CompilerTest {
     @Test
@@ -76,5 +85,46 @@ public class TypeAnalysisTest extends CompilerTest {
         assertProgramTypeAnalysisErrorCount("struct hello{int h;}; int main(){struct hello a; int b; b = a.h;}",0);
     }
 
+    @Test
+    public void testEqualTypesShared() throws FileNotFoundException, IOException {
+        setupParser("struct s { int a; }; int* x; int* y; char z[4]; void f(struct s* w){ int* v; struct s* u; }");
+        Program p = testParser.parse();
+        assertNoParserErrors();
+        assertSame(p.varDecls.get(0).varType, p.varDecls.get(1).varType);
+        assertSame(p.varDecls.get(0).varType, p.funDecls.get(0).block.varDecls.get(0).varType);
+        assertSame(p.funDecls.get(0).params.get(0).varType, p.funDecls.get(0).block.varDecls.get(1).varType);
+        assertSame(p.varDecls.get(2).varType, p.types.array(BaseType.CHAR, 4));
+        assertSame(p.types.struct("s"), p.types.intern(new StructType("s")));
+        assertSame(p.structTypeDecls.get(0), p.types.struct("s").dec);
+        assertSame(p.types.pointer(p.types.pointer(BaseType.INT)), p.types.intern(new PointerType(new PointerType(BaseType.INT))));
+    }
+
+    @Test
+    public void testStructTypeHashBeforeDeclaration(){
+        // used to need the declaration, which isn't there until it's parsed
+        assertEquals(new StructType("s").hashCode(), new Types().struct("s").hashCode());
+    }
 
+    @Test
+    public void testTypesNotSharedBetweenPrograms() throws FileNotFoundException, IOException {
+        setupParser("struct s { int a; }; void f(struct s* x){ }");
+        Program first = testParser.parse();
+        setupParser("struct s { char b; }; void f(struct s* x){ }");
+        Program second = testParser.parse();
+
+        assertNotSame(first.types, second.types);
+        assertNotSame(first.funDecls.get(0).params.get(0).varType, second.funDecls.get(0).params.get(0).varType);
+        assertSame(first.structTypeDecls.get(0), first.types.struct("s").dec);
+        assertSame(second.structTypeDecls.get(0), second.types.struct("s").dec);
+    }
+
+    @Test
+    public void testLongPointerChains() throws FileNotFoundException, IOException {
+        StringBuilder program = new StringBuilder("struct s { int a; }; struct s x; struct s* p; int main(){ ");
+        for(int i = 0; i < 2000; i++){
+            program.append("p = (struct s*)p; x = *p; ");
+        }
+        program.append("}");
+        assertProgramTypeAnalysisErrorCount(program.toString(), 0);
+    }
 }
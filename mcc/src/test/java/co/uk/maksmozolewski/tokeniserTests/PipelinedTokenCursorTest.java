@@ -0,0 +1,90 @@
+package co.uk.maksmozolewski.tokeniserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.ast.ASTPrinter;
+import co.uk.maksmozolewski.lexer.PipelinedTokenCursor;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.TokenCursor;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+import co.uk.maksmozolewski.parser.Parser;
+
+public class PipelinedTokenCursorTest extends CompilerTest {
+
+    /** enough statements to need more batches than there are, so the tokeniser has to wait on the parser */
+    private String program(){
+        StringBuilder program = new StringBuilder("int x;\nvoid main(){\n    char c;\n");
+        for(int i = 0; i < PipelinedTokenCursor.BATCH_SIZE * PipelinedTokenCursor.BATCH_COUNT / 4; i++){
+            program.append("    x = (int)c * ").append(i).append(";\n");
+            program.append("    print_s(\"line\\n\");\n");
+        }
+        return program.append("}").toString();
+    }
+
+    @Test
+    public void testMatchesTokenStream() throws FileNotFoundException, IOException {
+        setupTokenizer(program());
+        TokenCursor expected = testTokeniser.tokenise().cursor();
+        TokenCursor pipelined = new PipelinedTokenCursor(new Tokeniser(new Scanner(tempFile.toFile())));
+
+        while(expected.peekClass(0) != TokenClass.EOF){
+            assertEquals(expected.index(), pipelined.index());
+            assertEquals(expected.peekClass(0), pipelined.peekClass(0));
+            assertEquals(expected.peekClass(1), pipelined.peekClass(1));
+            assertEquals(expected.peekClass(2), pipelined.peekClass(2));
+            assertEquals(expected.data(), pipelined.data());
+            assertEquals(expected.position(), pipelined.position());
+            expected.advance();
+            pipelined.advance();
+        }
+        assertEquals(TokenClass.EOF, pipelined.peekClass(0));
+        assertEquals(TokenClass.EOF, pipelined.peekClass(5));
+        pipelined.advance();
+        assertEquals(expected.index(), pipelined.index());
+    }
+
+    @Test
+    public void testSameAST() throws FileNotFoundException, IOException {
+        setupParser(program());
+        testParser.parse().accept(printer);
+
+        ByteArrayOutputStream pipelinedStream = new ByteArrayOutputStream();
+        PrintWriter pipelinedWriter = new PrintWriter(pipelinedStream);
+        Parser pipelinedParser = new Parser(new PipelinedTokenCursor(new Tokeniser(new Scanner(tempFile.toFile()))));
+        pipelinedParser.parse().accept(new ASTPrinter(pipelinedWriter));
+        pipelinedWriter.flush();
+
+        assertEquals(0, pipelinedParser.getErrorCount());
+        assertStreamContentEquals(pipelinedStream.toString());
+    }
+
+    @Test
+    public void testTokeniserFailureReachesParser() throws FileNotFoundException, IOException {
+        setupTokenizer(program());
+        // fails a few batches into the file
+        Scanner failing = new Scanner(tempFile.toFile()){
+            @Override
+            public char next() throws IOException {
+                if(getOffset() > PipelinedTokenCursor.BATCH_SIZE * 8)
+                    throw new IllegalStateException("scanner failed");
+                return super.next();
+            }
+        };
+        Parser parser = new Parser(new PipelinedTokenCursor(new Tokeniser(failing)));
+
+        IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IllegalStateException.class, parser::parse));
+        assertEquals("scanner failed", e.getMessage());
+    }
+}
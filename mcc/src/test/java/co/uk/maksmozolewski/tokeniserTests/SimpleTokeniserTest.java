@@ -3,6 +3,8 @@ package co.uk.maksmozolewski.tokeniserTests;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 
 import org.junit.jupiter.api.Test;
 
@@ -344,4 +346,35 @@ public class SimpleTokeniserTest extends CompilerTest {
         }, "/* asdasdasdasd \n asdqwijeiqjiajsd */");
     }
 
+    @Test
+    public void testKeywordPrefixes() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+            new Token(TokenClass.IDENTIFIER,"in",1,0),
+            new Token(TokenClass.INT,null,1,3),
+            new Token(TokenClass.IDENTIFIER,"intx",1,7),
+            new Token(TokenClass.IF,null,1,12),
+            new Token(TokenClass.IDENTIFIER,"whil",1,15),
+            new Token(TokenClass.EOF,null,1,19)
+        }, "in int intx if whil");
+    }
+
+    @Test
+    public void testTriviaSkipped() throws FileNotFoundException, IOException {
+        setupTokenizer("  // one\n\t/* two */ x /**/");
+        assertEquals(TokenClass.IDENTIFIER, testTokeniser.nextToken().tokenClass);
+        assertEquals(20, testTokeniser.getTriviaSkipped());
+        assertEquals(TokenClass.EOF, testTokeniser.nextToken().tokenClass);
+        assertEquals(25, testTokeniser.getTriviaSkipped());
+    }
+
+    @Test
+    public void testManyCommentLines() throws FileNotFoundException, IOException {
+        String comments = "    // comment\n    /* comment */\n".repeat(100000);
+        assertTokenizerOutput(new Token[]{
+            new Token(TokenClass.IDENTIFIER,"x",200001,0),
+            new Token(TokenClass.EOF,null,200001,1)
+        }, comments + "x");
+        assertEquals(comments.length(), testTokeniser.getTriviaSkipped());
+    }
+
 }
\ No newline at end of file
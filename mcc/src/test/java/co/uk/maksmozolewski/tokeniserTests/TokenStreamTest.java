@@ -0,0 +1,81 @@
+package co.uk.maksmozolewski.tokeniserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.Token;
+import co.uk.maksmozolewski.lexer.TokenCursor;
+import co.uk.maksmozolewski.lexer.TokenStream;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+
+public class TokenStreamTest extends CompilerTest {
+
+    private String program =
+        "#include \"io.h\"\n" +
+        "int x;\n" +
+        "void main(){\n" +
+        "    char c;\n" +
+        "    x = x + 10;\n" +
+        "    c = '\\n';\n" +
+        "    print_s((char*)\"a\\tb\");\n" +
+        "}";
+
+    @Test
+    public void testMatchesTokens() throws FileNotFoundException, IOException {
+        setupTokenizer(program);
+        TokenStream stream = testTokeniser.tokenise();
+
+        Tokeniser tokeniser = new Tokeniser(new Scanner(tempFile.toFile()));
+        for(int i = 0; i < stream.size(); i++){
+            Token token = tokeniser.nextToken();
+            assertEquals(token.tokenClass, stream.getTokenClass(i));
+            assertEquals(token.data, stream.getData(i));
+            assertEquals(token.position, stream.getPosition(i));
+        }
+        assertEquals(TokenClass.EOF, stream.getTokenClass(stream.size() - 1));
+    }
+
+    @Test
+    public void testIdentifiersInterned() throws FileNotFoundException, IOException {
+        setupTokenizer("x y x");
+        TokenStream stream = testTokeniser.tokenise();
+
+        assertEquals(stream.getDataId(0), stream.getDataId(2));
+        assertNotEquals(stream.getDataId(0), stream.getDataId(1));
+        assertSame(stream.getData(0), stream.getData(2));
+        assertEquals(2, stream.getPool().size());
+        assertEquals(TokenStream.NO_DATA, stream.getDataId(3));
+    }
+
+    @Test
+    public void testCursor() throws FileNotFoundException, IOException {
+        setupTokenizer("a = 1;");
+        TokenCursor cursor = testTokeniser.tokenise().cursor();
+
+        assertEquals(TokenClass.IDENTIFIER, cursor.peekClass(0));
+        assertEquals(TokenClass.INT_LITERAL, cursor.peekClass(2));
+        assertEquals(TokenClass.EOF, cursor.peekClass(10));
+        assertEquals("a", cursor.data());
+
+        cursor.advance();
+        cursor.advance();
+        assertEquals(2, cursor.index());
+        assertEquals("1", cursor.data());
+        assertEquals(4, cursor.position().getColumn());
+
+        for(int i = 0; i < 5; i++){
+            cursor.advance();
+        }
+        assertEquals(TokenClass.EOF, cursor.peekClass(0));
+        assertEquals(4, cursor.index());
+    }
+}
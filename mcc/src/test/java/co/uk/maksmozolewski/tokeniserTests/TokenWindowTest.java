@@ -0,0 +1,57 @@
+package co.uk.maksmozolewski.tokeniserTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import co.uk.maksmozolewski.CompilerTest;
+import co.uk.maksmozolewski.lexer.Scanner;
+import co.uk.maksmozolewski.lexer.TokenCursor;
+import co.uk.maksmozolewski.lexer.TokenWindow;
+import co.uk.maksmozolewski.lexer.Tokeniser;
+import co.uk.maksmozolewski.lexer.Token.TokenClass;
+
+public class TokenWindowTest extends CompilerTest {
+
+    @Test
+    public void testMatchesTokenStream() throws FileNotFoundException, IOException {
+        StringBuilder program = new StringBuilder();
+        for(int i = 0; i < 100; i++){
+            program.append("int f").append(i).append("(char* s){ x = (int)s[").append(i).append("]; }\n");
+        }
+        setupTokenizer(program.toString());
+        TokenCursor expected = testTokeniser.tokenise().cursor();
+        TokenCursor window = new TokenWindow(new Tokeniser(new Scanner(tempFile.toFile())));
+
+        int step = 0;
+        while(expected.peekClass(0) != TokenClass.EOF){
+            // look ahead by varying amounts, wrapping around the buffer at different points
+            int distance = step++ % TokenWindow.CAPACITY;
+            assertEquals(expected.peekClass(distance), window.peekClass(distance));
+            assertEquals(expected.peekClass(0), window.peekClass(0));
+            assertEquals(expected.index(), window.index());
+            assertEquals(expected.data(), window.data());
+            assertEquals(expected.position(), window.position());
+            expected.advance();
+            window.advance();
+        }
+        assertEquals(TokenClass.EOF, window.peekClass(0));
+    }
+
+    @Test
+    public void testPastEOF() throws FileNotFoundException, IOException {
+        setupTokenizer("a b");
+        TokenCursor window = new TokenWindow(testTokeniser);
+
+        assertEquals(TokenClass.EOF, window.peekClass(5));
+        window.advance();
+        window.advance();
+        window.advance();
+        assertEquals(2, window.index());
+        assertEquals(TokenClass.EOF, window.peekClass(0));
+        assertEquals(TokenClass.EOF, window.peekClass(1));
+    }
+}